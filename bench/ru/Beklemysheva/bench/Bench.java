@@ -0,0 +1,189 @@
+/* Минимальный измерительный стенд для микробенчмарков */
+
+package ru.Beklemysheva.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Измерительный стенд без внешних зависимостей.
+ * Операция выполняется итерациями фиксированной длительности: сначала прогревочные,
+ * затем измеряемые. Для каждой итерации считаются время на операцию и байты,
+ * выделенные текущим потоком (com.sun.management.ThreadMXBean), а также число сборок мусора.
+ * Результаты выводятся таблицей и могут сравниваться с сохраненным CSV-файлом
+ * предыдущего запуска, чтобы регрессии были видны сразу.
+ */
+final class Bench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Результат операции накапливается здесь, чтобы JIT не удалил вычисления. */
+    static volatile int sink;
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    private final double regressionThreshold;
+    private final Map<String, double[]> baseline = new HashMap<>();
+    private final List<String> rows = new ArrayList<>();
+    private int regressions;
+
+    /**
+     * Измеряемая операция. Возвращаемое значение поглощается стендом.
+     */
+    interface Operation {
+        Object run();
+    }
+
+    /**
+     * Создает стенд.
+     * @param warmupIterations количество прогревочных итераций
+     * @param iterations количество измеряемых итераций
+     * @param iterationMillis длительность одной итерации в миллисекундах
+     * @param regressionThreshold допустимое относительное замедление (например, 0.1)
+     */
+    Bench(int warmupIterations, int iterations, long iterationMillis, double regressionThreshold) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.regressionThreshold = regressionThreshold;
+        System.out.printf(Locale.ROOT, "%-44s %-10s %9s %14s %10s %14s %6s%n",
+                "Бенчмарк", "Граф", "Городов", "нс/оп", "±%", "байт/оп", "GC");
+    }
+
+    /**
+     * Загружает результаты предыдущего запуска для сравнения.
+     * @param file CSV-файл, записанный методом save
+     */
+    void loadBaseline(Path file) {
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(",");
+                if (parts.length == 5 && !parts[0].equals("benchmark")) {
+                    baseline.put(parts[0] + "," + parts[1] + "," + parts[2],
+                            new double[]{Double.parseDouble(parts[3]), Double.parseDouble(parts[4])});
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Ошибка чтения базовых результатов: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Измеряет операцию и печатает строку результата.
+     * @param name название бенчмарка
+     * @param graph тип графа
+     * @param size число городов
+     * @param operationsPerCall сколько измеряемых операций выполняет один вызов run()
+     * @param operation операция
+     */
+    void measure(String name, String graph, int size, int operationsPerCall, Operation operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operationsPerCall, operation);
+        }
+        double[] nanos = new double[iterations];
+        double bytes = 0;
+        long gcBefore = gcCount();
+        for (int i = 0; i < iterations; i++) {
+            double[] result = iteration(operationsPerCall, operation);
+            nanos[i] = result[0];
+            bytes += result[1];
+        }
+        long gc = gcCount() - gcBefore;
+        double mean = 0;
+        for (double value : nanos) {
+            mean += value;
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double value : nanos) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = iterations > 1 ? 100.0 * Math.sqrt(variance / (iterations - 1)) / mean : 0.0;
+        bytes /= iterations;
+
+        String key = name + "," + graph + "," + size;
+        rows.add(String.format(Locale.ROOT, "%s,%.3f,%.1f", key, mean, bytes));
+        String verdict = "";
+        double[] previous = baseline.get(key);
+        if (previous != null) {
+            double change = (mean - previous[0]) / previous[0];
+            verdict = String.format(Locale.ROOT, "  %+.1f%%", 100 * change);
+            if (change > regressionThreshold) {
+                verdict += "  РЕГРЕССИЯ";
+                regressions++;
+            }
+            if (bytes > previous[1] * (1 + regressionThreshold) + 16) {
+                verdict += "  РОСТ ВЫДЕЛЕНИЙ";
+                regressions++;
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-44s %-10s %9d %14.1f %10.1f %14.1f %6d%s%n",
+                name, graph, size, mean, error, bytes, gc, verdict);
+    }
+
+    /**
+     * Выполняет одну итерацию заданной длительности.
+     * @return время в наносекундах и выделенные байты на одну операцию
+     */
+    private double[] iteration(int operationsPerCall, Operation operation) {
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long calls = 0;
+        long elapsed;
+        int accumulator = 0;
+        do {
+            Object result = operation.run();
+            accumulator += result == null ? 0 : result.hashCode();
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        sink += accumulator;
+        double operations = (double) calls * operationsPerCall;
+        return new double[]{elapsed / operations, allocated / operations};
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Сохраняет результаты в CSV для последующего сравнения.
+     * @param file путь к файлу
+     */
+    void save(Path file) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("benchmark,graph,size,nsPerOp,bytesPerOp");
+            out.newLine();
+            for (String row : rows) {
+                out.write(row);
+                out.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Ошибка записи результатов: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает количество обнаруженных регрессий.
+     * @return количество регрессий по времени и по выделениям памяти
+     */
+    int regressions() {
+        return regressions;
+    }
+}
@@ -0,0 +1,176 @@
+/* Бенчмарки пакета city */
+
+package ru.Beklemysheva.bench;
+
+import ru.Beklemysheva.city.City;
+import ru.Beklemysheva.city.Path;
+import ru.Beklemysheva.city.RouteCache;
+
+import java.util.Random;
+
+/**
+ * Набор бенчмарков City и Path на синтетических графах.
+ * Быстрый прогон в одной JVM со сравнением с прошлым запуском; точные измерения
+ * в отдельных JVM — те же бенчмарки на JMH (CityOperationsBenchmark, PathQueryBenchmark,
+ * RouteFanOutBenchmark).
+ *
+ * Запуск (классы src и bench в одном classpath):
+ * java -Xmx8g ru.Beklemysheva.bench.CityBenchmarks [параметры]
+ *   --sizes 1000,10000,100000,1000000   число городов
+ *   --graphs grid,random,scalefree
+ *   --warmup 3 --iterations 5 --time 500   итерации и длительность итерации в мс
+ *   --out results.csv            сохранить результаты
+ *   --baseline results.csv       сравнить с предыдущим запуском
+ *   --threshold 0.1              допустимое замедление; при превышении код выхода 1
+ */
+public final class CityBenchmarks {
+    private static final int BATCH = 1024;
+    private static final int QUERY_PAIRS = 64;
+    private static final int[] FAN_OUTS = {4, 64, 1024, 16384};
+
+    /**
+     * Закрытый конструктор: класс содержит только точку входа.
+     */
+    private CityBenchmarks() {}
+
+    /**
+     * Запускает бенчмарки.
+     * @param args параметры командной строки
+     */
+    public static void main(String[] args) {
+        String sizes = "1000,10000,100000,1000000";
+        String graphs = "grid,random,scalefree";
+        int warmup = 3;
+        int iterations = 5;
+        long time = 500;
+        double threshold = 0.1;
+        String out = null;
+        String baseline = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes": sizes = args[i + 1]; break;
+                case "--graphs": graphs = args[i + 1]; break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--time": time = Long.parseLong(args[i + 1]); break;
+                case "--threshold": threshold = Double.parseDouble(args[i + 1]); break;
+                case "--out": out = args[i + 1]; break;
+                case "--baseline": baseline = args[i + 1]; break;
+                default: System.out.println("Ошибка: неизвестный параметр " + args[i] + ".");
+            }
+        }
+
+        Bench bench = new Bench(warmup, iterations, time, threshold);
+        if (baseline != null) {
+            bench.loadBaseline(java.nio.file.Path.of(baseline));
+        }
+        for (int fanOut : FAN_OUTS) {
+            benchmarkAddRoute(bench, fanOut);
+        }
+        for (String graph : graphs.split(",")) {
+            for (String size : sizes.split(",")) {
+                benchmarkGraph(bench, graph.trim(), Integer.parseInt(size.trim()));
+            }
+        }
+        if (out != null) {
+            bench.save(java.nio.file.Path.of(out));
+        }
+        if (bench.regressions() > 0) {
+            System.out.println("Обнаружено регрессий: " + bench.regressions());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Добавление и удаление маршрутов из одного города при растущем числе маршрутов.
+     * Удаление входит в измерение, чтобы индекс входящих маршрутов городов назначения не рос.
+     */
+    private static void benchmarkAddRoute(Bench bench, int fanOut) {
+        City[] destinations = new City[fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            destinations[i] = new City("D" + i);
+        }
+        bench.measure("City.addRoute+removeRoute", "hub", fanOut, fanOut, () -> {
+            City hub = new City("H");
+            for (City destination : destinations) {
+                hub.addRoute(destination, 1.0);
+            }
+            for (City destination : destinations) {
+                hub.removeRoute(destination);
+            }
+            return hub;
+        });
+    }
+
+    /**
+     * Бенчмарки сравнения городов, получения маршрутов и поиска пути на одном графе.
+     */
+    private static void benchmarkGraph(Bench bench, String kind, int size) {
+        City[] cities = GraphGenerator.generate(kind, size, 42);
+        City[] twins = GraphGenerator.generate(kind, size, 42);
+        City[] rivals = GraphGenerator.rewired(cities);
+        if (cities.length < 2) {
+            return;
+        }
+        Random random = new Random(7);
+        int[] sample = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            sample[i] = random.nextInt(size);
+        }
+
+        bench.measure("City.equals (равные)", kind, size, BATCH, () -> {
+            int equal = 0;
+            for (int i : sample) {
+                equal += cities[i].equals(twins[i]) ? 1 : 0;
+            }
+            return equal;
+        });
+        bench.measure("City.equals (то же название, другие маршруты)", kind, size, BATCH, () -> {
+            int equal = 0;
+            for (int i : sample) {
+                equal += cities[i].equals(rivals[i]) ? 1 : 0;
+            }
+            return equal;
+        });
+        bench.measure("City.equals (другое название)", kind, size, BATCH, () -> {
+            int equal = 0;
+            for (int i : sample) {
+                equal += cities[i].equals(cities[(i + 1) % size]) ? 1 : 0;
+            }
+            return equal;
+        });
+        bench.measure("City.hashCode", kind, size, BATCH, () -> {
+            int hash = 0;
+            for (int i : sample) {
+                hash += cities[i].hashCode();
+            }
+            return hash;
+        });
+        bench.measure("City.getRoutes", kind, size, BATCH, () -> {
+            int routes = 0;
+            for (int i : sample) {
+                routes += cities[i].getRoutes().size();
+            }
+            return routes;
+        });
+
+        Path[] paths = new Path[QUERY_PAIRS];
+        for (int i = 0; i < QUERY_PAIRS; i++) {
+            paths[i] = new Path(cities[random.nextInt(size)], cities[random.nextInt(size)]);
+        }
+        int[] next = new int[1];
+        int capacity = RouteCache.getCapacity();
+        RouteCache.setCapacity(0);
+        bench.measure("Path.getRoute (без кэша)", kind, size, 1,
+                () -> paths[next[0]++ % QUERY_PAIRS].getRoute());
+        RouteCache.setCapacity(capacity);
+        for (Path path : paths) {
+            path.getRoute();
+        }
+        bench.measure("Path.getRoute (из кэша)", kind, size, 1,
+                () -> paths[next[0]++ % QUERY_PAIRS].getRoute());
+        bench.measure("Path.toString (из кэша)", kind, size, 1,
+                () -> paths[next[0]++ % QUERY_PAIRS].toString());
+        RouteCache.clear();
+    }
+}
@@ -0,0 +1,133 @@
+/* Бенчмарки JMH для операций City */
+
+package ru.Beklemysheva.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.Beklemysheva.city.City;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение, хэш-код и получение маршрутов городов на синтетических графах от 1 тыс.
+ * до 1 млн городов. Каждая операция выполняется для 1024 случайных городов подряд,
+ * результаты поглощаются Blackhole.
+ *
+ * Сборка и запуск из корня проекта:
+ * mvn -B package -pl bench -am
+ * java -jar target/bench/benchmarks.jar CityOperationsBenchmark -prof gc -rf json -rff city.json
+ * Профайлер gc добавляет скорость выделения памяти и байты на операцию; файлы JSON
+ * двух запусков можно сравнить, чтобы увидеть регрессии. На JDK 21 классы собраны
+ * в режиме preview: java --enable-preview -jar ... -jvmArgsAppend --enable-preview.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CityOperationsBenchmark {
+    private static final int BATCH = 1024;
+
+    /** Вид графа. */
+    @Param({"grid", "random", "scalefree"})
+    public String graph;
+
+    /** Число городов. */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private City[] cities;
+    private City[] twins;
+    private City[] rivals;
+    private int[] sample;
+
+    /**
+     * Строит граф, его точную копию и копию с теми же названиями, но другими маршрутами.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        cities = GraphGenerator.generate(graph, size, 42);
+        twins = GraphGenerator.generate(graph, size, 42);
+        rivals = GraphGenerator.rewired(cities);
+        Random random = new Random(7);
+        sample = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            sample[i] = random.nextInt(size);
+        }
+    }
+
+    /**
+     * Сравнение равных городов: совпадают названия и наборы маршрутов.
+     * @param blackhole поглотитель результатов
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void equalsEqual(Blackhole blackhole) {
+        for (int i : sample) {
+            blackhole.consume(cities[i].equals(twins[i]));
+        }
+    }
+
+    /**
+     * Сравнение городов с одинаковым названием и разными маршрутами:
+     * названия совпадают, решение принимается по отпечатку набора маршрутов.
+     * @param blackhole поглотитель результатов
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void equalsSameNameOtherRoutes(Blackhole blackhole) {
+        for (int i : sample) {
+            blackhole.consume(cities[i].equals(rivals[i]));
+        }
+    }
+
+    /**
+     * Сравнение городов с разными названиями.
+     * @param blackhole поглотитель результатов
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void equalsOtherName(Blackhole blackhole) {
+        for (int i : sample) {
+            blackhole.consume(cities[i].equals(cities[(i + 1) % size]));
+        }
+    }
+
+    /**
+     * Хэш-код города.
+     * @param blackhole поглотитель результатов
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void cityHashCode(Blackhole blackhole) {
+        for (int i : sample) {
+            blackhole.consume(cities[i].hashCode());
+        }
+    }
+
+    /**
+     * Копия списка маршрутов города.
+     * @param blackhole поглотитель результатов
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getRoutes(Blackhole blackhole) {
+        for (int i : sample) {
+            blackhole.consume(cities[i].getRoutes());
+        }
+    }
+}
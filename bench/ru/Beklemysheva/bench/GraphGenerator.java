@@ -0,0 +1,153 @@
+/* Генераторы синтетических сетей дорог для бенчмарков */
+
+package ru.Beklemysheva.bench;
+
+import ru.Beklemysheva.city.City;
+import ru.Beklemysheva.city.Route;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Синтетические графы городов трех видов:
+ * решетка (дорожная сеть с координатами), случайный граф с постоянной степенью
+ * и безмасштабный граф Барабаши — Альберт с городами-хабами.
+ * Генерация детерминирована: одинаковое зерно дает одинаковый граф.
+ */
+final class GraphGenerator {
+    private static final int MAX_COST = 10;
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private GraphGenerator() {}
+
+    /**
+     * Создает граф указанного вида.
+     * @param kind "grid", "random" или "scalefree"
+     * @param size число городов
+     * @param seed зерно генератора
+     * @return города графа
+     */
+    static City[] generate(String kind, int size, long seed) {
+        switch (kind) {
+            case "grid":
+                return grid(size, seed);
+            case "random":
+                return random(size, 4, seed);
+            case "scalefree":
+                return scaleFree(size, 3, seed);
+            default:
+                System.out.println("Ошибка: неизвестный вид графа " + kind + ".");
+                return new City[0];
+        }
+    }
+
+    /**
+     * Квадратная решетка с дорогами в обе стороны между соседними городами.
+     */
+    static City[] grid(int size, long seed) {
+        Random random = new Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(size));
+        City[] cities = new City[size];
+        for (int i = 0; i < size; i++) {
+            cities[i] = new City("G" + i, i % side, i / side);
+        }
+        for (int i = 0; i < size; i++) {
+            if (i % side + 1 < side && i + 1 < size) {
+                connect(cities[i], cities[i + 1], random);
+            }
+            if (i + side < size) {
+                connect(cities[i], cities[i + side], random);
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Случайный граф: из каждого города degree дорог в различные случайные города.
+     */
+    static City[] random(int size, int degree, long seed) {
+        Random random = new Random(seed);
+        City[] cities = new City[size];
+        for (int i = 0; i < size; i++) {
+            cities[i] = new City("R" + i);
+        }
+        int[] chosen = new int[degree];
+        for (int i = 0; i < size; i++) {
+            int count = 0;
+            while (count < Math.min(degree, size - 1)) {
+                int target = random.nextInt(size);
+                if (target != i && !contains(chosen, count, target)) {
+                    chosen[count++] = target;
+                    cities[i].addRoute(cities[target], 1 + random.nextInt(MAX_COST));
+                }
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Безмасштабный граф: каждый новый город соединяется в обе стороны с links городами,
+     * выбранными с вероятностью, пропорциональной их степени.
+     */
+    static City[] scaleFree(int size, int links, long seed) {
+        Random random = new Random(seed);
+        City[] cities = new City[size];
+        int[] endpoints = new int[2 * links * size + 2];
+        int endpointCount = 0;
+        int[] chosen = new int[links];
+        for (int i = 0; i < size; i++) {
+            cities[i] = new City("S" + i);
+            int count = 0;
+            while (count < Math.min(links, i)) {
+                int target = endpointCount == 0 ? random.nextInt(i) : endpoints[random.nextInt(endpointCount)];
+                if (target != i && !contains(chosen, count, target)) {
+                    chosen[count++] = target;
+                    connect(cities[i], cities[target], random);
+                    endpoints[endpointCount++] = i;
+                    endpoints[endpointCount++] = target;
+                }
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Создает города с теми же названиями и тем же числом маршрутов, что и у исходных,
+     * но каждый маршрут ведет в город со следующим номером после исходного города назначения.
+     * Такие города отличаются от исходных только набором маршрутов.
+     * @param cities исходные города
+     * @return города с измененными маршрутами в том же порядке
+     */
+    static City[] rewired(City[] cities) {
+        Map<City, Integer> ids = new IdentityHashMap<>();
+        City[] rewired = new City[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            ids.put(cities[i], i);
+            rewired[i] = new City(cities[i].getName());
+        }
+        for (int i = 0; i < cities.length; i++) {
+            for (Route route : cities[i].getRoutesView()) {
+                int target = (ids.get(route.getDestination()) + 1) % cities.length;
+                rewired[i].addRoute(rewired[target], route.getCost());
+            }
+        }
+        return rewired;
+    }
+
+    private static void connect(City a, City b, Random random) {
+        a.addRoute(b, 1 + random.nextInt(MAX_COST));
+        b.addRoute(a, 1 + random.nextInt(MAX_COST));
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,136 @@
+/* Сравнение очередей с приоритетом для поиска маршрутов */
+
+package ru.Beklemysheva.bench;
+
+import ru.Beklemysheva.city.CityGraph;
+import ru.Beklemysheva.city.IndexedDaryHeap;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Сравнивает IndexedDaryHeap и java.util.PriorityQueue на полном поиске Дейкстры
+ * из одного города по снимку CityGraph синтетических графов.
+ * PriorityQueue используется так же, как раньше в поиске: объект на каждую вставку
+ * и ленивое удаление устаревших записей; куча уменьшает приоритет на месте.
+ *
+ * Запуск: java ru.Beklemysheva.bench.HeapBenchmarks [--sizes 10000,100000,1000000]
+ *   [--graphs grid,random,scalefree] [--warmup 3] [--iterations 5] [--time 500]
+ */
+public final class HeapBenchmarks {
+    private static final int SOURCES = 16;
+
+    /**
+     * Закрытый конструктор: класс содержит только точку входа.
+     */
+    private HeapBenchmarks() {}
+
+    /**
+     * Запускает бенчмарки.
+     * @param args параметры командной строки
+     */
+    public static void main(String[] args) {
+        String sizes = "10000,100000,1000000";
+        String graphs = "grid,random,scalefree";
+        int warmup = 3;
+        int iterations = 5;
+        long time = 500;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes": sizes = args[i + 1]; break;
+                case "--graphs": graphs = args[i + 1]; break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--time": time = Long.parseLong(args[i + 1]); break;
+                default: System.out.println("Ошибка: неизвестный параметр " + args[i] + ".");
+            }
+        }
+
+        Bench bench = new Bench(warmup, iterations, time, Double.POSITIVE_INFINITY);
+        for (String kind : graphs.split(",")) {
+            for (String size : sizes.split(",")) {
+                int n = Integer.parseInt(size.trim());
+                CityGraph graph = CityGraph.of(Arrays.asList(GraphGenerator.generate(kind.trim(), n, 42)));
+                double[] dist = new double[n];
+                IndexedDaryHeap heap = new IndexedDaryHeap(n);
+                int[] next = new int[1];
+                bench.measure("Дейкстра: PriorityQueue", kind, n, 1,
+                        () -> withPriorityQueue(graph, next[0]++ % SOURCES * (n / SOURCES), dist));
+                bench.measure("Дейкстра: IndexedDaryHeap", kind, n, 1,
+                        () -> withHeap(graph, next[0]++ % SOURCES * (n / SOURCES), dist, heap));
+            }
+        }
+    }
+
+    /**
+     * Поиск Дейкстры с PriorityQueue и ленивым удалением.
+     * @return сумма конечных расстояний
+     */
+    private static double withPriorityQueue(CityGraph graph, int source, double[] dist) {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        dist[source] = 0.0;
+        queue.add(new Entry(source, 0.0));
+        double total = 0;
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry.cost > dist[entry.id]) {
+                continue;
+            }
+            total += entry.cost;
+            for (int e = graph.firstRoute(entry.id), last = graph.firstRoute(entry.id + 1); e < last; e++) {
+                int v = graph.routeTarget(e);
+                double candidate = entry.cost + graph.routeCost(e);
+                if (candidate < dist[v]) {
+                    dist[v] = candidate;
+                    queue.add(new Entry(v, candidate));
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Поиск Дейкстры с индексированной кучей.
+     * @return сумма конечных расстояний
+     */
+    private static double withHeap(CityGraph graph, int source, double[] dist, IndexedDaryHeap heap) {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        heap.clear();
+        dist[source] = 0.0;
+        heap.insertOrDecrease(source, 0.0);
+        double total = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double cost = dist[u];
+            total += cost;
+            for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                int v = graph.routeTarget(e);
+                double candidate = cost + graph.routeCost(e);
+                if (candidate < dist[v]) {
+                    dist[v] = candidate;
+                    heap.insertOrDecrease(v, candidate);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Элемент PriorityQueue: номер города и стоимость.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final int id;
+        final double cost;
+
+        Entry(int id, double cost) {
+            this.id = id;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+}
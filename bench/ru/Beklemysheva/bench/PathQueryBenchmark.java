@@ -0,0 +1,123 @@
+/* Бенчмарки JMH для поиска маршрутов Path */
+
+package ru.Beklemysheva.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Beklemysheva.city.City;
+import ru.Beklemysheva.city.Path;
+import ru.Beklemysheva.city.RouteCache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск маршрута между случайными парами городов без кэша и с кэшем RouteCache.
+ * Каждый бенчмарк выполняется в отдельной JVM, поэтому общий кэш одного бенчмарка
+ * не влияет на другой. Запуск: java -jar target/bench/benchmarks.jar PathQueryBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class PathQueryBenchmark {
+    private static final int QUERY_PAIRS = 64;
+
+    /** Вид графа. */
+    @Param({"grid", "random", "scalefree"})
+    public String graph;
+
+    /** Число городов. */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private Path[] paths;
+    private int next;
+
+    /**
+     * Состояние с отключенным кэшем: емкость RouteCache равна 0 на время бенчмарка.
+     */
+    @State(Scope.Benchmark)
+    public static class NoCache {
+        private int capacity;
+
+        /**
+         * Отключает кэш.
+         */
+        @Setup(Level.Trial)
+        public void disable() {
+            capacity = RouteCache.getCapacity();
+            RouteCache.setCapacity(0);
+        }
+
+        /**
+         * Восстанавливает прежнюю емкость кэша.
+         */
+        @TearDown(Level.Trial)
+        public void restore() {
+            RouteCache.setCapacity(capacity);
+        }
+    }
+
+    /**
+     * Строит граф и выбирает пары городов для запросов.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        City[] cities = GraphGenerator.generate(graph, size, 42);
+        Random random = new Random(7);
+        paths = new Path[QUERY_PAIRS];
+        for (int i = 0; i < QUERY_PAIRS; i++) {
+            paths[i] = new Path(cities[random.nextInt(size)], cities[random.nextInt(size)]);
+        }
+    }
+
+    /**
+     * Очищает кэш после бенчмарка.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RouteCache.clear();
+    }
+
+    /**
+     * Поиск маршрута без кэша.
+     * @param noCache состояние с отключенным кэшем
+     * @return маршрут
+     */
+    @Benchmark
+    public City[] getRouteUncached(NoCache noCache) {
+        return paths[next++ % QUERY_PAIRS].getRoute();
+    }
+
+    /**
+     * Маршрут из кэша: после первого прохода по парам все запросы попадают в кэш.
+     * @return маршрут
+     */
+    @Benchmark
+    public City[] getRouteCached() {
+        return paths[next++ % QUERY_PAIRS].getRoute();
+    }
+
+    /**
+     * Строковое представление маршрута из кэша.
+     * @return строка маршрута
+     */
+    @Benchmark
+    public String toStringCached() {
+        return paths[next++ % QUERY_PAIRS].toString();
+    }
+}
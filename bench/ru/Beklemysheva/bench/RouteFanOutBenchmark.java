@@ -0,0 +1,62 @@
+/* Бенчмарк JMH добавления маршрута в город с большим числом маршрутов */
+
+package ru.Beklemysheva.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.Beklemysheva.city.City;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Добавление и удаление одного маршрута в городе, у которого уже есть fanOut маршрутов.
+ * Время операции не должно расти с числом маршрутов города.
+ * Запуск: java -jar target/bench/benchmarks.jar RouteFanOutBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class RouteFanOutBenchmark {
+    /** Число маршрутов города до добавления. */
+    @Param({"4", "64", "1024", "16384"})
+    public int fanOut;
+
+    private City hub;
+    private City extra;
+
+    /**
+     * Создает город с fanOut маршрутами и отдельный город назначения.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        hub = new City("H");
+        for (int i = 0; i < fanOut; i++) {
+            hub.addRoute(new City("D" + i), 1.0);
+        }
+        extra = new City("E");
+    }
+
+    /**
+     * Добавляет маршрут и удаляет его, чтобы состояние города не менялось между вызовами.
+     * @return город с маршрутами
+     */
+    @Benchmark
+    public City addRemoveRoute() {
+        hub.addRoute(extra, 1.0);
+        hub.removeRoute(extra);
+        return hub;
+    }
+}
@@ -0,0 +1,134 @@
+/* Нагрузочный тест локального сервера маршрутов */
+
+package ru.Beklemysheva.bench;
+
+import ru.Beklemysheva.city.City;
+import ru.Beklemysheva.city.CityGraph;
+import ru.Beklemysheva.city.ContractionHierarchy;
+import ru.Beklemysheva.city.RouteClient;
+import ru.Beklemysheva.city.RouteResult;
+import ru.Beklemysheva.city.RouteServer;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест RouteServer на одной машине: сервер и клиенты запускаются в одном процессе
+ * и общаются через сокеты localhost. Каждый клиент держит до depth запросов без ответа
+ * (конвейер); измеряются пропускная способность и задержки от отправки до ответа.
+ *
+ * Запуск: java ru.Beklemysheva.bench.RouteServerLoad [--size 100000] [--graph grid]
+ *   [--clients 8] [--depth 16] [--requests 20000] [--inflight 64] [--perconnection 16]
+ *   [--hierarchy false]
+ */
+public final class RouteServerLoad {
+
+    /**
+     * Закрытый конструктор: класс содержит только точку входа.
+     */
+    private RouteServerLoad() {}
+
+    /**
+     * Запускает нагрузочный тест.
+     * @param args параметры командной строки
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int size = 100000;
+        String kind = "grid";
+        int clients = 8;
+        int depth = 16;
+        int requests = 20000;
+        int inFlight = 64;
+        int perConnection = 0;
+        boolean hierarchy = false;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--size": size = Integer.parseInt(args[i + 1]); break;
+                case "--graph": kind = args[i + 1]; break;
+                case "--clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "--depth": depth = Integer.parseInt(args[i + 1]); break;
+                case "--requests": requests = Integer.parseInt(args[i + 1]); break;
+                case "--inflight": inFlight = Integer.parseInt(args[i + 1]); break;
+                case "--perconnection": perConnection = Integer.parseInt(args[i + 1]); break;
+                case "--hierarchy": hierarchy = Boolean.parseBoolean(args[i + 1]); break;
+                default: System.out.println("Ошибка: неизвестный параметр " + args[i] + ".");
+            }
+        }
+
+        City[] cities = GraphGenerator.generate(kind, size, 42);
+        if (cities.length < 2) {
+            return;
+        }
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        if (perConnection <= 0) {
+            perConnection = Math.max(1, inFlight / 4);
+        }
+        RouteServer server = hierarchy
+                ? RouteServer.start(ContractionHierarchy.build(graph), 0, inFlight, perConnection)
+                : RouteServer.start(graph, 0, inFlight, perConnection);
+        if (server == null) {
+            return;
+        }
+
+        int perClient = requests / clients;
+        long[] latencies = new long[perClient * clients];
+        AtomicLong notFound = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        long begin = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            int window = depth;
+            threads[c] = Thread.ofVirtual().start(() -> {
+                Random random = new Random(client);
+                Semaphore permits = new Semaphore(window);
+                try (RouteClient connection = RouteClient.connect(server.getPort())) {
+                    if (connection == null) {
+                        return;
+                    }
+                    CompletableFuture<?>[] futures = new CompletableFuture<?>[perClient];
+                    for (int i = 0; i < perClient; i++) {
+                        permits.acquireUninterruptibly();
+                        int slot = client * perClient + i;
+                        long sent = System.nanoTime();
+                        futures[i] = connection.cost(cities[random.nextInt(cities.length)].getName(),
+                                cities[random.nextInt(cities.length)].getName())
+                                .thenAccept((RouteResult result) -> {
+                                    latencies[slot] = System.nanoTime() - sent;
+                                    if (!result.isFound()) {
+                                        notFound.incrementAndGet();
+                                    }
+                                    permits.release();
+                                });
+                    }
+                    CompletableFuture.allOf(futures).join();
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        server.close();
+
+        Arrays.sort(latencies);
+        System.out.printf(Locale.ROOT, "%s %d городов, %s: клиентов %d, конвейер %d, в работе до %d (%d на соединение)%n",
+                kind, cities.length, hierarchy ? "иерархия" : "Дейкстра", clients, depth, inFlight, perConnection);
+        System.out.printf(Locale.ROOT, "запросов %d за %.2f с: %.0f запросов/с, без пути %d%n",
+                latencies.length, elapsed / 1e9, latencies.length / (elapsed / 1e9), notFound.get());
+        System.out.printf(Locale.ROOT, "задержка, мс: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9),
+                percentile(latencies, 0.99), percentile(latencies, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(fraction * sorted.length) - 1));
+        return sorted[index] / 1e6;
+    }
+}
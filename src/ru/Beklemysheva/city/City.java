@@ -3,39 +3,165 @@
 package ru.Beklemysheva.city;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Класс, представляющий город с маршрутами в другие города.
+ * Маршруты индексируются по названию города назначения, поэтому добавление,
+ * удаление и проверка наличия маршрута выполняются за O(1),
+ * а порядок обхода совпадает с порядком добавления.
+ * Город также хранит обратный индекс входящих маршрутов (по городу отправления),
+ * который нужен для поиска от города конца к городу начала.
+ *
+ * Город потокобезопасен. Изменения выполняются под блокировкой обоих городов маршрута
+ * (в порядке их создания, что исключает взаимную блокировку). Чтение идет по неизменяемому
+ * снимку маршрутов, который публикуется через volatile-поле и перестраивается только
+ * после изменения, поэтому потоки поиска маршрутов не ждут друг друга и видят
+ * согласованный набор маршрутов каждого города.
  */
 public class City {
+    private static final AtomicLong MODIFICATIONS = new AtomicLong();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final AtomicLong MIN_COST_PER_DISTANCE =
+            new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+    private static final AtomicLong UNBOUNDED_ROUTES = new AtomicLong();
+    private static final List<RouteListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private final long sequence = SEQUENCE.getAndIncrement();
     private final String name;
-    private final List<Route> routes;
+    private final boolean hasCoordinates;
+    private final double x;
+    private final double y;
+    private final Map<String, Route> routes;
+    private volatile RouteSnapshot snapshot;
+    private volatile long fingerprint;
+    private final Map<City, Route> incomingRoutes = new IdentityHashMap<>();
+    private volatile Incoming incoming;
 
     /**
      * Создает новый город с указанным названием.
      * @param name название города
      */
     public City(String name) {
-        this(name, new ArrayList<>());
+        this(name, false, 0.0, 0.0);
     }
 
     /**
-     * Создает новый город с указанным названием и маршрутами.
+     * Создает новый город с указанным названием и координатами.
+     * Координаты используются эвристикой поиска A* и после создания не меняются.
      * @param name название города
-     * @param routes список маршрутов
+     * @param x координата X
+     * @param y координата Y
      */
-    public City(String name, List<Route> routes) {
+    public City(String name, double x, double y) {
+        this(name, true, x, y);
+    }
+
+    /**
+     * Создает новый город без маршрутов с указанным названием и, возможно, координатами.
+     * Конструктор не передает ссылку на город другим объектам: маршруты подключаются
+     * после создания.
+     * @param name название города
+     * @param hasCoordinates заданы ли координаты
+     * @param x координата X
+     * @param y координата Y
+     */
+    private City(String name, boolean hasCoordinates, double x, double y) {
+        if (hasCoordinates && (!Double.isFinite(x) || !Double.isFinite(y))) {
+            System.out.println("Ошибка: координаты города должны быть конечными числами.");
+            hasCoordinates = false;
+        }
+        this.hasCoordinates = hasCoordinates;
+        this.x = hasCoordinates ? x : 0.0;
+        this.y = hasCoordinates ? y : 0.0;
         if (name == null || name.trim().isEmpty()) {
             System.out.println("Ошибка: название города не может быть пустым.");
             this.name = "Город без названия";
         } else {
             this.name = name;
         }
-        this.routes = new ArrayList<>(routes);
+        this.routes = new LinkedHashMap<>();
+    }
+
+    /**
+     * Создает новый город с указанным названием и маршрутами.
+     * Повторные маршруты в один и тот же город и null пропускаются.
+     * @param name название города
+     * @param routes список маршрутов
+     * @return новый город
+     */
+    public static City of(String name, List<Route> routes) {
+        City city = new City(name);
+        city.attachAll(routes);
+        return city;
+    }
+
+    /**
+     * Создает новый город с указанным названием и маршрутами, как City.of.
+     * Повторные маршруты в один и тот же город и null пропускаются.
+     * @param name название города
+     * @param routes список маршрутов
+     * @deprecated конструктор регистрирует еще не созданный город во входящих маршрутах
+     *             городов назначения, поэтому подкласс City может оказаться видимым
+     *             другим потокам до завершения своего конструктора; используйте City.of
+     */
+    @Deprecated
+    @SuppressWarnings("this-escape")
+    public City(String name, List<Route> routes) {
+        this(name, false, 0.0, 0.0);
+        attachAll(routes);
+    }
+
+    /**
+     * Подключает маршруты к новому городу (см. attach).
+     * @param routes список маршрутов
+     */
+    private void attachAll(List<Route> routes) {
+        if (routes == null) {
+            System.out.println("Ошибка: список маршрутов не может быть null.");
+            return;
+        }
+        for (Route route : routes) {
+            if (route != null) {
+                attach(route);
+            }
+        }
+    }
+
+    /**
+     * Подключает маршрут к новому городу без увеличения счетчика изменений и без
+     * уведомления слушателей. Допустимо, пока город и город назначения видны только
+     * создающему их коду или у города нет входящих маршрутов: ни один найденный ранее
+     * маршрут через такой город не проходит. Используется при создании новых городов.
+     * @param route маршрут
+     * @return true если маршрут подключен, false если маршрут в этот город уже есть
+     */
+    boolean attach(Route route) {
+        City destination = route.getDestination();
+        City first = sequence <= destination.sequence ? this : destination;
+        City second = first == this ? destination : this;
+        synchronized (first) {
+            synchronized (second) {
+                if (routes.putIfAbsent(destination.getName(), route) != null) {
+                    return false;
+                }
+                snapshot = null;
+                fingerprint += fingerprintOf(destination.getName());
+                destination.incomingRoutes.put(this, route);
+                destination.incoming = null;
+            }
+        }
+        recordBound(route);
+        return true;
     }
 
     /**
@@ -52,12 +178,28 @@ public class City {
             System.out.println("Ошибка: стоимость должна быть положительной.");
             return;
         }
-        if (hasRouteTo(destination)) {
-            System.out.println("Ошибка: маршрут уже существует.");
-            return;
-        }
 
-        routes.add(new Route(destination, cost));
+        Route route = new Route(destination, cost);
+        City first = sequence <= destination.sequence ? this : destination;
+        City second = first == this ? destination : this;
+        synchronized (first) {
+            synchronized (second) {
+                if (routes.containsKey(destination.getName())) {
+                    System.out.println("Ошибка: маршрут уже существует.");
+                    return;
+                }
+                routes.put(destination.getName(), route);
+                snapshot = null;
+                fingerprint += fingerprintOf(destination.getName());
+                destination.incomingRoutes.put(this, route);
+                destination.incoming = null;
+            }
+        }
+        recordBound(route);
+        MODIFICATIONS.incrementAndGet();
+        for (RouteListener listener : LISTENERS) {
+            listener.routeAdded(this, route);
+        }
     }
 
     /**
@@ -65,9 +207,8 @@ public class City {
      * @param destination город назначения
      * @return true если маршрут существует
      */
-    private boolean hasRouteTo(City destination) {
-        return routes.stream()
-                .anyMatch(route -> route.getDestination().getName().equals(destination.getName()));
+    synchronized boolean hasRouteTo(City destination) {
+        return routes.containsKey(destination.getName());
     }
 
     /**
@@ -79,7 +220,170 @@ public class City {
             System.out.println("Ошибка: город назначения не может быть null.");
             return;
         }
-        routes.removeIf(route -> route.getDestination().getName().equals(destination.getName()));
+        String key = destination.getName();
+        while (true) {
+            Route existing;
+            synchronized (this) {
+                existing = routes.get(key);
+            }
+            if (existing == null) {
+                return;
+            }
+            City target = existing.getDestination();
+            City first = sequence <= target.sequence ? this : target;
+            City second = first == this ? target : this;
+            synchronized (first) {
+                synchronized (second) {
+                    if (routes.get(key) != existing) {
+                        continue;
+                    }
+                    routes.remove(key);
+                    snapshot = null;
+                    fingerprint -= fingerprintOf(key);
+                    target.incomingRoutes.remove(this);
+                    target.incoming = null;
+                }
+            }
+            if (!hasCoordinates || !target.hasCoordinates) {
+                UNBOUNDED_ROUTES.decrementAndGet();
+            }
+            MODIFICATIONS.incrementAndGet();
+            for (RouteListener listener : LISTENERS) {
+                listener.routeRemoved(this, existing);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Возвращает текущий снимок входящих маршрутов.
+     * @return города отправления и стоимости входящих маршрутов
+     */
+    Incoming incomingSnapshot() {
+        Incoming current = incoming;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (incoming == null) {
+                City[] sources = new City[incomingRoutes.size()];
+                double[] costs = new double[sources.length];
+                int i = 0;
+                for (Map.Entry<City, Route> entry : incomingRoutes.entrySet()) {
+                    sources[i] = entry.getKey();
+                    costs[i] = entry.getValue().getCost();
+                    i++;
+                }
+                incoming = new Incoming(sources, costs);
+            }
+            return incoming;
+        }
+    }
+
+    /**
+     * Регистрирует слушателя изменений маршрутов всех городов.
+     * @param listener слушатель
+     */
+    public static void addRouteListener(RouteListener listener) {
+        if (listener == null) {
+            System.out.println("Ошибка: слушатель не может быть null.");
+            return;
+        }
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Отменяет регистрацию слушателя изменений маршрутов.
+     * @param listener слушатель
+     */
+    public static void removeRouteListener(RouteListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Возвращает счетчик изменений маршрутов всех городов.
+     * Увеличивается при каждом успешном вызове addRoute или removeRoute.
+     * @return номер текущей версии графа
+     */
+    static long modificationCount() {
+        return MODIFICATIONS.get();
+    }
+
+    /**
+     * Возвращает множитель допустимой эвристики A*: минимальную стоимость на единицу
+     * евклидова расстояния среди всех маршрутов, когда-либо добавленных между городами
+     * с координатами. Значение поддерживается при добавлении маршрутов и читается за O(1),
+     * поэтому поиски всех маршрутов и версий графа используют одну границу без обхода графа.
+     * После удаления маршрутов граница не растет: она остается допустимой, но может быть
+     * заниженной. Если в графе есть маршрут, у одного из городов которого нет координат,
+     * граница неизвестна и возвращается 0, что сводит A* к алгоритму Дейкстры;
+     * в таком графе множитель задается явно через Path.setHeuristicScale.
+     * @return множитель эвристики (не меньше 0)
+     */
+    static double heuristicScale() {
+        if (UNBOUNDED_ROUTES.get() > 0) {
+            return 0.0;
+        }
+        double min = Double.longBitsToDouble(MIN_COST_PER_DISTANCE.get());
+        return min == Double.POSITIVE_INFINITY ? 0.0 : min;
+    }
+
+    /**
+     * Учитывает добавленный маршрут из этого города в границе heuristicScale.
+     * @param route маршрут
+     */
+    private void recordBound(Route route) {
+        City destination = route.getDestination();
+        if (!hasCoordinates || !destination.hasCoordinates) {
+            UNBOUNDED_ROUTES.incrementAndGet();
+            return;
+        }
+        double distance = distanceTo(destination);
+        if (distance <= 0) {
+            return;
+        }
+        double ratio = route.getCost() / distance;
+        long known = MIN_COST_PER_DISTANCE.get();
+        while (ratio < Double.longBitsToDouble(known)
+                && !MIN_COST_PER_DISTANCE.compareAndSet(known, Double.doubleToLongBits(ratio))) {
+            known = MIN_COST_PER_DISTANCE.get();
+        }
+    }
+
+    /**
+     * Проверяет, заданы ли координаты города.
+     * @return true если координаты заданы
+     */
+    public boolean hasCoordinates() {
+        return hasCoordinates;
+    }
+
+    /**
+     * Возвращает координату X города.
+     * @return координата X (0, если координаты не заданы)
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Возвращает координату Y города.
+     * @return координата Y (0, если координаты не заданы)
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Возвращает евклидово расстояние до другого города.
+     * @param other другой город
+     * @return расстояние или 0, если у одного из городов нет координат
+     */
+    public double distanceTo(City other) {
+        if (!hasCoordinates || !other.hasCoordinates) {
+            return 0.0;
+        }
+        return Math.hypot(x - other.x, y - other.y);
     }
 
     /**
@@ -97,11 +401,80 @@ public class City {
      */
 
     public List<Route> getRoutes() {
-        return new ArrayList<>(routes);
+        return new ArrayList<>(getRoutesView());
+    }
+
+    /**
+     * Возвращает неизменяемый список маршрутов из этого города без копирования.
+     * Список является снимком на момент вызова и не меняется при последующих
+     * вызовах addRoute и removeRoute.
+     * @return неизменяемый список маршрутов (не null)
+     */
+    public List<Route> getRoutesView() {
+        return routeSnapshot().view;
+    }
+
+    /**
+     * Возвращает количество маршрутов из этого города.
+     * @return количество маршрутов
+     */
+    public int routeCount() {
+        return routeSnapshot().array.length;
+    }
+
+    /**
+     * Возвращает маршрут по его порядковому номеру (в порядке добавления).
+     * Массив маршрутов строится заново только после изменения маршрутов,
+     * поэтому обход через routeCount() и routeAt(i) не создает новых объектов.
+     * Если маршруты могут меняться из других потоков, согласованный обход
+     * дают forEachRoute и getRoutesView.
+     * @param index номер маршрута от 0 до routeCount() - 1
+     * @return маршрут
+     */
+    public Route routeAt(int index) {
+        return routeSnapshot().array[index];
+    }
+
+    /**
+     * Выполняет действие для каждого маршрута из этого города без копирования списка.
+     * @param action действие над маршрутом
+     */
+    public void forEachRoute(Consumer<? super Route> action) {
+        for (Route route : routeSnapshot().array) {
+            action.accept(route);
+        }
+    }
+
+    /**
+     * Возвращает массив маршрутов текущего снимка для обхода в алгоритмах поиска.
+     * Массив нельзя изменять.
+     * @return маршруты в порядке добавления
+     */
+    Route[] routeArray() {
+        return routeSnapshot().array;
+    }
+
+    /**
+     * Возвращает снимок маршрутов, перестраивая его после изменений.
+     * @return текущий снимок маршрутов
+     */
+    private RouteSnapshot routeSnapshot() {
+        RouteSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = new RouteSnapshot(routes.values().toArray(new Route[0]));
+            }
+            return snapshot;
+        }
     }
 
     /**
      * Сравнивает города по названию и маршрутам.
+     * Города с разными отпечатками набора маршрутов отклоняются за O(1),
+     * полное сравнение выполняется только при совпадении отпечатков.
      * @param o объект для сравнения
      * @return true если города равны
      */
@@ -110,24 +483,37 @@ public class City {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         City city = (City) o;
-        return name.equals(city.name) && routesEqual(city.routes);
+        return name.equals(city.name)
+                && fingerprint == city.fingerprint
+                && routesEqual(city.routeArray());
+    }
+
+    /**
+     * Возвращает вклад названия города назначения в отпечаток набора маршрутов.
+     * Отпечаток — сумма вкладов по всем маршрутам, поэтому он не зависит от порядка
+     * добавления и обновляется за O(1); у городов с одинаковым набором маршрутов
+     * отпечатки всегда совпадают.
+     * @param destinationName название города назначения
+     * @return перемешанный 64-битный хэш названия
+     */
+    private static long fingerprintOf(String destinationName) {
+        long h = destinationName.hashCode() * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
     }
 
     /**
      * Сравнивает маршруты двух городов.
-     * @param otherRoutes маршруты другого города
+     * @param otherRoutes снимок маршрутов другого города
      * @return true если маршруты эквивалентны
      */
-    private boolean routesEqual(List<Route> otherRoutes) {
-        if (routes.size() != otherRoutes.size()) return false;
-
-        Set<String> thisDestinations = new HashSet<>();
-        Set<String> otherDestinations = new HashSet<>();
-
-        routes.forEach(r -> thisDestinations.add(r.getDestination().getName()));
-        otherRoutes.forEach(r -> otherDestinations.add(r.getDestination().getName()));
-
-        return thisDestinations.equals(otherDestinations);
+    private synchronized boolean routesEqual(Route[] otherRoutes) {
+        if (routes.size() != otherRoutes.length) return false;
+        for (Route route : otherRoutes) {
+            if (!routes.containsKey(route.getDestination().getName())) return false;
+        }
+        return true;
     }
 
     /**
@@ -148,7 +534,7 @@ public class City {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(name).append(":\n");
-        for (Route route : routes) {
+        for (Route route : routeArray()) {
             sb.append("    ")
                     .append(route.getDestination().getName())
                     .append(":")
@@ -157,4 +543,30 @@ public class City {
         }
         return sb.toString();
     }
+
+    /**
+     * Неизменяемый снимок маршрутов города: массив для обхода и список-обертка над ним.
+     */
+    private static final class RouteSnapshot {
+        final Route[] array;
+        final List<Route> view;
+
+        RouteSnapshot(Route[] array) {
+            this.array = array;
+            this.view = Collections.unmodifiableList(Arrays.asList(array));
+        }
+    }
+
+    /**
+     * Неизменяемый снимок входящих маршрутов: города отправления и стоимости.
+     */
+    static final class Incoming {
+        final City[] sources;
+        final double[] costs;
+
+        Incoming(City[] sources, double[] costs) {
+            this.sources = sources;
+            this.costs = costs;
+        }
+    }
 }
\ No newline at end of file
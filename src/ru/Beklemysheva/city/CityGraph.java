@@ -0,0 +1,567 @@
+/* Неизменяемый снимок графа городов в формате CSR (compressed sparse row) */
+
+package ru.Beklemysheva.city;
+
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок графа городов.
+ * Каждому городу присваивается номер от 0 до cityCount() - 1, а маршруты хранятся
+ * в трех плоских массивах: маршруты города i занимают позиции
+ * с offsets[i] по offsets[i + 1] - 1 в массивах targets и costs.
+ * Последующие изменения объектов City на снимок не влияют.
+ * Маршруты каждого города читаются одним согласованным снимком,
+ * поэтому снимок можно строить, пока другие потоки меняют маршруты.
+ * Снимок, загруженный из файла (GraphFile), хранит только названия городов;
+ * объекты City для него создаются при первом обращении к ним.
+ */
+public final class CityGraph {
+    private static volatile SoftReference<Shared> shared = new SoftReference<>(null);
+
+    private final String[] names;
+    private final byte[] nameBytes;
+    private final int[] nameOffsets;
+    private volatile City[] cities;
+    private Map<City, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] costs;
+    private final ScratchPool<SearchScratch> scratch;
+
+    /**
+     * Создает снимок из готовых массивов и объектов City.
+     * @param cities города по номерам
+     * @param ids номер каждого города
+     * @param offsets начало маршрутов каждого города (длина cityCount() + 1)
+     * @param targets номера городов назначения
+     * @param costs стоимости маршрутов
+     */
+    private CityGraph(City[] cities, Map<City, Integer> ids, int[] offsets, int[] targets, double[] costs) {
+        this.names = new String[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            names[i] = cities[i].getName();
+        }
+        this.nameBytes = null;
+        this.nameOffsets = null;
+        this.ids = ids;
+        this.cities = cities;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.costs = costs;
+        this.scratch = new ScratchPool<>(() -> new SearchScratch(names.length));
+    }
+
+    /**
+     * Создает снимок из таблицы названий в кодировке UTF-8 и массивов маршрутов.
+     * Названия декодируются, а объекты City создаются только при обращении к ним.
+     * @param nameBytes названия всех городов подряд в UTF-8
+     * @param nameOffsets начало названия каждого города в nameBytes (длина cityCount() + 1)
+     * @param offsets начало маршрутов каждого города (длина cityCount() + 1)
+     * @param targets номера городов назначения
+     * @param costs стоимости маршрутов
+     */
+    CityGraph(byte[] nameBytes, int[] nameOffsets, int[] offsets, int[] targets, double[] costs) {
+        this.names = new String[offsets.length - 1];
+        this.nameBytes = nameBytes;
+        this.nameOffsets = nameOffsets;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.costs = costs;
+        this.scratch = new ScratchPool<>(() -> new SearchScratch(names.length));
+    }
+
+    /**
+     * Строит снимок по набору городов. В снимок попадают также все города,
+     * достижимые из указанных по маршрутам.
+     * @param cities исходные города
+     * @return снимок графа
+     */
+    public static CityGraph of(Collection<City> cities) {
+        Map<City, Integer> ids = new IdentityHashMap<>();
+        Deque<City> pending = new ArrayDeque<>();
+        for (City city : cities) {
+            if (city == null) {
+                System.out.println("Ошибка: город не может быть null.");
+                continue;
+            }
+            if (!ids.containsKey(city)) {
+                ids.put(city, ids.size());
+                pending.add(city);
+            }
+        }
+        List<Route[]> routesById = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            Route[] routes = pending.poll().routeArray();
+            routesById.add(routes);
+            for (Route route : routes) {
+                City destination = route.getDestination();
+                if (!ids.containsKey(destination)) {
+                    ids.put(destination, ids.size());
+                    pending.add(destination);
+                }
+            }
+        }
+
+        City[] byId = new City[ids.size()];
+        ids.forEach((city, id) -> byId[id] = city);
+
+        int[] offsets = new int[byId.length + 1];
+        int routeCount = 0;
+        for (int i = 0; i < byId.length; i++) {
+            offsets[i] = routeCount;
+            routeCount += routesById.get(i).length;
+        }
+        offsets[byId.length] = routeCount;
+
+        int[] targets = new int[routeCount];
+        double[] costs = new double[routeCount];
+        for (int i = 0; i < byId.length; i++) {
+            int e = offsets[i];
+            for (Route route : routesById.get(i)) {
+                targets[e] = ids.get(route.getDestination());
+                costs[e] = route.getCost();
+                e++;
+            }
+        }
+        return new CityGraph(byId, ids, offsets, targets, costs);
+    }
+
+    /**
+     * Возвращает снимок, содержащий указанные города и все достижимые из них,
+     * для текущей версии графа (City.modificationCount()). Последний построенный здесь
+     * снимок переиспользуется, пока маршруты не менялись и в нем есть все указанные города,
+     * поэтому повторные пакетные запросы (RouteBatch, Isochrone) не строят снимок
+     * и не создают рабочие массивы поиска заново. Снимок хранится по мягкой ссылке:
+     * вместе с пулом рабочих массивов он освобождается сборщиком мусора при нехватке памяти
+     * или заменяется следующим снимком после изменения маршрутов.
+     * @param cities исходные города
+     * @return снимок графа
+     */
+    static CityGraph current(Collection<City> cities) {
+        long version = City.modificationCount();
+        Shared last = shared.get();
+        if (last != null && last.version == version && last.graph.containsAll(cities)) {
+            return last.graph;
+        }
+        CityGraph graph = of(cities);
+        // Снимок соответствует версии, только если маршруты не менялись во время построения.
+        if (City.modificationCount() == version) {
+            shared = new SoftReference<>(new Shared(graph, version));
+        }
+        return graph;
+    }
+
+    /**
+     * Проверяет, что все города (кроме null) входят в снимок.
+     * @param cities города
+     * @return true если все города входят в снимок
+     */
+    private boolean containsAll(Collection<City> cities) {
+        for (City city : cities) {
+            if (city != null && idOf(city) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает количество городов в снимке.
+     * @return количество городов
+     */
+    public int cityCount() {
+        return names.length;
+    }
+
+    /**
+     * Возвращает количество маршрутов в снимке.
+     * @return количество маршрутов
+     */
+    public int routeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Возвращает номер города в снимке.
+     * @param city город
+     * @return номер города или -1, если город не входит в снимок
+     */
+    public int idOf(City city) {
+        Integer id = ids().get(city);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Возвращает город по номеру.
+     * @param id номер города
+     * @return город
+     */
+    public City cityAt(int id) {
+        return cities()[id];
+    }
+
+    /**
+     * Возвращает название города по номеру, не создавая объект City.
+     * @param id номер города
+     * @return название города
+     */
+    public String nameAt(int id) {
+        String name = names[id];
+        if (name == null) {
+            int begin = nameOffsets[id];
+            name = new String(nameBytes, begin, nameOffsets[id + 1] - begin, StandardCharsets.UTF_8);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Возвращает объекты City снимка в порядке номеров. Для снимка, загруженного
+     * из файла, при первом вызове создаются новые города с маршрутами из снимка.
+     * @return неизменяемый список городов
+     */
+    public List<City> toCities() {
+        return Collections.unmodifiableList(Arrays.asList(cities()));
+    }
+
+    /**
+     * Возвращает города снимка, при необходимости создавая их.
+     * Маршруты подключаются без счетчика изменений и слушателей: новые города еще
+     * никому не видны, поэтому загрузка снимка не сбрасывает кэш маршрутов
+     * и не рассылает событие на каждый маршрут.
+     * @return города по номерам
+     */
+    private City[] cities() {
+        City[] existing = cities;
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            if (cities != null) {
+                return cities;
+            }
+            City[] created = new City[names.length];
+            Map<City, Integer> createdIds = new IdentityHashMap<>();
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new City(nameAt(i));
+                createdIds.put(created[i], i);
+            }
+            for (int i = 0; i < created.length; i++) {
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    created[i].attach(new Route(created[targets[e]], costs[e]));
+                }
+            }
+            ids = createdIds;
+            cities = created;
+            return created;
+        }
+    }
+
+    /**
+     * Возвращает номера городов снимка, при необходимости создавая города.
+     * @return номер каждого города
+     */
+    private Map<City, Integer> ids() {
+        cities();
+        return ids;
+    }
+
+    /**
+     * Возвращает количество маршрутов из города.
+     * @param id номер города
+     * @return количество исходящих маршрутов
+     */
+    public int outDegree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Возвращает позицию первого маршрута города в массивах маршрутов.
+     * @param id номер города
+     * @return позиция первого маршрута
+     */
+    public int firstRoute(int id) {
+        return offsets[id];
+    }
+
+    /**
+     * Возвращает номер города назначения маршрута.
+     * @param route позиция маршрута
+     * @return номер города назначения
+     */
+    public int routeTarget(int route) {
+        return targets[route];
+    }
+
+    /**
+     * Возвращает стоимость маршрута.
+     * @param route позиция маршрута
+     * @return стоимость проезда
+     */
+    public double routeCost(int route) {
+        return costs[route];
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости между городами снимка.
+     * @param start город начала
+     * @param end город конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND, если путь не найден
+     *         или один из городов не входит в снимок
+     */
+    public RouteResult shortestPath(City start, City end) {
+        int from = idOf(start);
+        int to = idOf(end);
+        if (from < 0 || to < 0) {
+            return RouteResult.NOT_FOUND;
+        }
+        return shortestPath(from, to);
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости между городами снимка (алгоритм Дейкстры).
+     * Рабочие массивы поиска берутся из пула снимка на время запроса и переиспользуются.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    public RouteResult shortestPath(int from, int to) {
+        SearchScratch s = scratch.borrow();
+        try {
+            return shortestPath(from, to, s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости, используя переданные рабочие массивы.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @param s рабочие массивы поиска для этого снимка
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    RouteResult shortestPath(int from, int to, SearchScratch s) {
+        return settle(from, to, s) ? buildResult(s, to, s.dist(to)) : RouteResult.NOT_FOUND;
+    }
+
+    /**
+     * Находит только стоимость маршрута минимальной стоимости, не восстанавливая маршрут.
+     * @param start город начала
+     * @param end город конца
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     *         или один из городов не входит в снимок
+     */
+    public double shortestCost(City start, City end) {
+        int from = idOf(start);
+        int to = idOf(end);
+        if (from < 0 || to < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return shortestCost(from, to);
+    }
+
+    /**
+     * Находит только стоимость маршрута минимальной стоимости между городами снимка.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    public double shortestCost(int from, int to) {
+        SearchScratch s = scratch.borrow();
+        try {
+            return settle(from, to, s) ? s.dist(to) : Double.POSITIVE_INFINITY;
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Поиск Дейкстры до извлечения города конца; стоимости и предыдущие города
+     * остаются в рабочих массивах.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @param s рабочие массивы поиска для этого снимка
+     * @return true если путь найден
+     */
+    private boolean settle(int from, int to, SearchScratch s) {
+        s.reset();
+        s.set(from, 0.0, -1);
+        s.queue.insertOrDecrease(from, 0.0);
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 1;
+
+        while (!s.queue.isEmpty()) {
+            int current = s.queue.poll();
+            double cost = s.dist(current);
+            settled++;
+            if (current == to) {
+                SearchProbe.record(settled, relaxed, peak);
+                return true;
+            }
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double candidate = cost + costs[e];
+                if (candidate < s.dist(neighbor)) {
+                    s.set(neighbor, candidate, current);
+                    s.queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+            peak = Math.max(peak, s.queue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        return false;
+    }
+
+    /**
+     * Находит все города снимка, достижимые из города начала со стоимостью не больше budget.
+     * Выполняется один поиск Дейкстры: города дороже бюджета в очередь не попадают,
+     * поэтому поиск заканчивается, как только бюджет исчерпан.
+     * @param start город начала
+     * @param budget наибольшая допустимая стоимость
+     * @return минимальная стоимость до каждого достижимого города, включая город начала
+     *         (города сравниваются по ссылке); пустой словарь, если город не входит в снимок
+     */
+    public Map<City, Double> withinCost(City start, double budget) {
+        int from = idOf(start);
+        if (from < 0) {
+            return Collections.emptyMap();
+        }
+        if (!(budget >= 0)) {
+            System.out.println("Ошибка: бюджет стоимости должен быть неотрицательным числом.");
+            return Collections.emptyMap();
+        }
+        SearchScratch s = scratch.borrow();
+        try {
+            return withinCost(from, budget, s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Поиск Дейкстры, ограниченный стоимостью, с переданными рабочими массивами.
+     * @param from номер города начала
+     * @param budget наибольшая допустимая стоимость
+     * @param s рабочие массивы поиска для этого снимка
+     * @return минимальная стоимость до каждого достижимого города
+     */
+    Map<City, Double> withinCost(int from, double budget, SearchScratch s) {
+        Map<City, Double> result = new IdentityHashMap<>();
+        s.reset();
+        s.set(from, 0.0, -1);
+        s.queue.insertOrDecrease(from, 0.0);
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 1;
+
+        while (!s.queue.isEmpty()) {
+            int current = s.queue.poll();
+            double cost = s.dist(current);
+            settled++;
+            result.put(cityAt(current), cost);
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double candidate = cost + costs[e];
+                if (candidate <= budget && candidate < s.dist(neighbor)) {
+                    s.set(neighbor, candidate, current);
+                    s.queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+            peak = Math.max(peak, s.queue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        return result;
+    }
+
+    /**
+     * Заполняет строку таблицы стоимостей: поиск Дейкстры из города начала
+     * останавливается, как только извлечены все города назначения.
+     * @param from номер города начала
+     * @param columns номера городов назначения по столбцам (-1 для города вне снимка)
+     * @param isTarget отметка городов назначения
+     * @param targetCount количество различных городов назначения в снимке
+     * @param row массив, в который записывается строка
+     * @param offset позиция первого столбца строки в row
+     */
+    void costsFrom(int from, int[] columns, boolean[] isTarget, int targetCount, double[] row, int offset) {
+        SearchScratch s = scratch.borrow();
+        try {
+            costsFrom(from, columns, isTarget, targetCount, row, offset, s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    private void costsFrom(int from, int[] columns, boolean[] isTarget, int targetCount, double[] row, int offset,
+                           SearchScratch s) {
+        s.reset();
+        s.set(from, 0.0, -1);
+        s.queue.insertOrDecrease(from, 0.0);
+        int remaining = targetCount;
+
+        while (remaining > 0 && !s.queue.isEmpty()) {
+            int current = s.queue.poll();
+            double cost = s.dist(current);
+            if (isTarget[current]) {
+                remaining--;
+            }
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double candidate = cost + costs[e];
+                if (candidate < s.dist(neighbor)) {
+                    s.set(neighbor, candidate, current);
+                    s.queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+        for (int j = 0; j < columns.length; j++) {
+            row[offset + j] = columns[j] < 0 ? Double.POSITIVE_INFINITY : s.dist(columns[j]);
+        }
+    }
+
+    /**
+     * Восстанавливает маршрут по предыдущим городам, сохраненным в рабочих массивах.
+     * @param s рабочие массивы завершенного поиска
+     * @param to номер города конца
+     * @param cost суммарная стоимость
+     * @return результат поиска
+     */
+    private RouteResult buildResult(SearchScratch s, int to, double cost) {
+        int length = 0;
+        for (int v = to; v != -1; v = s.parent(v)) {
+            length++;
+        }
+        City[] path = new City[length];
+        for (int v = to; v != -1; v = s.parent(v)) {
+            path[--length] = cityAt(v);
+        }
+        return new RouteResult(path, cost);
+    }
+
+    /**
+     * Снимок, построенный методом current, и версия графа, которой он соответствует.
+     */
+    private static final class Shared {
+        final CityGraph graph;
+        final long version;
+
+        Shared(CityGraph graph, long version) {
+            this.graph = graph;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,853 @@
+/* Иерархия сжатия (Contraction Hierarchies) для быстрых запросов маршрутов */
+
+package ru.Beklemysheva.city;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Иерархия сжатия над снимком графа CityGraph.
+ * При построении города по очереди «стягиваются» (от наименее важных к наиболее важным),
+ * а пути через стянутый город сохраняются в виде коротких ребер (shortcut).
+ * Запрос — двунаправленный поиск Дейкстры только по ребрам, ведущим к более важным городам,
+ * поэтому он просматривает лишь небольшую часть графа. Короткие ребра при выдаче маршрута
+ * разворачиваются обратно в последовательность реальных городов.
+ * Стягивание идет раундами: в каждом раунде выбираются города, приоритет которых меньше,
+ * чем у всех их нестянутых соседей. Такие города не соседствуют друг с другом, поэтому
+ * короткие ребра для них ищутся параллельно на всех ядрах (поиск свидетеля обходит все
+ * выбранные города); затем города, оставшиеся минимальными после пересчета приоритета,
+ * стягиваются.
+ * Иерархию можно сохранить в поток и загрузить обратно для того же снимка;
+ * при загрузке данные проверяются.
+ */
+public final class ContractionHierarchy {
+    private static final int FORMAT_MAGIC = 0x43484731;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final CityGraph graph;
+    private final int[] rank;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] edgeCost;
+    private final int[] edgeFirst;
+    private final int[] edgeSecond;
+
+    private final int[] upOffsets;
+    private final int[] upEdges;
+    private final int[] downOffsets;
+    private final int[] downEdges;
+
+    private final ScratchPool<QueryScratch> scratch;
+
+    /**
+     * Создает иерархию из порядка городов и списка ребер и строит структуры для запросов.
+     * @param graph исходный снимок графа
+     * @param rank порядковый номер стягивания каждого города
+     * @param edgeFrom начало каждого ребра
+     * @param edgeTo конец каждого ребра
+     * @param edgeCost стоимость каждого ребра
+     * @param edgeFirst первая половина короткого ребра (-1 для исходного маршрута)
+     * @param edgeSecond вторая половина короткого ребра (-1 для исходного маршрута)
+     */
+    private ContractionHierarchy(CityGraph graph, int[] rank, int[] edgeFrom, int[] edgeTo,
+                                 double[] edgeCost, int[] edgeFirst, int[] edgeSecond) {
+        this.graph = graph;
+        this.rank = rank;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeCost = edgeCost;
+        this.edgeFirst = edgeFirst;
+        this.edgeSecond = edgeSecond;
+
+        int n = rank.length;
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int e = 0; e < edgeFrom.length; e++) {
+            if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+                upOffsets[edgeFrom[e] + 1]++;
+            } else {
+                downOffsets[edgeTo[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        upEdges = new int[upOffsets[n]];
+        downEdges = new int[downOffsets[n]];
+        int[] upFill = Arrays.copyOf(upOffsets, n);
+        int[] downFill = Arrays.copyOf(downOffsets, n);
+        for (int e = 0; e < edgeFrom.length; e++) {
+            if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+                upEdges[upFill[edgeFrom[e]]++] = e;
+            } else {
+                downEdges[downFill[edgeTo[e]]++] = e;
+            }
+        }
+        scratch = new ScratchPool<>(() -> new QueryScratch(n));
+    }
+
+    /**
+     * Строит иерархию сжатия для снимка графа.
+     * @param graph снимок графа (не null)
+     * @return иерархия сжатия или null, если снимок не задан
+     */
+    public static ContractionHierarchy build(CityGraph graph) {
+        if (graph == null) {
+            System.out.println("Ошибка: снимок графа не может быть null.");
+            return null;
+        }
+        return new Builder(graph).build();
+    }
+
+    /**
+     * Возвращает снимок графа, для которого построена иерархия.
+     * @return снимок графа
+     */
+    public CityGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Возвращает количество коротких ребер, добавленных при построении.
+     * @return количество коротких ребер
+     */
+    public int shortcutCount() {
+        return edgeFrom.length - graph.routeCount();
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости с помощью иерархии.
+     * @param start город начала
+     * @param end город конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND, если путь не найден
+     *         или один из городов не входит в снимок
+     */
+    public RouteResult shortestPath(City start, City end) {
+        int from = graph.idOf(start);
+        int to = graph.idOf(end);
+        if (from < 0 || to < 0) {
+            return RouteResult.NOT_FOUND;
+        }
+        return shortestPath(from, to);
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости между городами снимка с помощью иерархии.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    public RouteResult shortestPath(int from, int to) {
+        if (from == to) {
+            return new RouteResult(new City[]{graph.cityAt(from)}, 0.0);
+        }
+        QueryScratch s = scratch.borrow();
+        try {
+            return unpackPath(from, query(from, to, s), s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Восстанавливает маршрут по результату двунаправленного поиска.
+     * @param from номер города начала
+     * @param meeting город встречи или -1, если путь не найден
+     * @param s рабочие массивы завершенного запроса
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    private RouteResult unpackPath(int from, int meeting, QueryScratch s) {
+        if (meeting < 0) {
+            return RouteResult.NOT_FOUND;
+        }
+
+        List<Integer> upward = new ArrayList<>();
+        for (int v = meeting; s.forward.parentEdge[v] >= 0; v = edgeFrom[s.forward.parentEdge[v]]) {
+            upward.add(s.forward.parentEdge[v]);
+        }
+        List<City> path = new ArrayList<>();
+        path.add(graph.cityAt(from));
+        for (int i = upward.size() - 1; i >= 0; i--) {
+            unpack(upward.get(i), path);
+        }
+        for (int v = meeting; s.backward.parentEdge[v] >= 0; v = edgeTo[s.backward.parentEdge[v]]) {
+            unpack(s.backward.parentEdge[v], path);
+        }
+        return new RouteResult(path.toArray(new City[0]), s.best);
+    }
+
+    /**
+     * Находит только стоимость маршрута минимальной стоимости с помощью иерархии,
+     * не разворачивая короткие ребра.
+     * @param start город начала
+     * @param end город конца
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     *         или один из городов не входит в снимок
+     */
+    public double shortestCost(City start, City end) {
+        int from = graph.idOf(start);
+        int to = graph.idOf(end);
+        if (from < 0 || to < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return shortestCost(from, to);
+    }
+
+    /**
+     * Находит только стоимость маршрута минимальной стоимости между городами снимка.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    public double shortestCost(int from, int to) {
+        if (from == to) {
+            return 0.0;
+        }
+        QueryScratch s = scratch.borrow();
+        try {
+            return query(from, to, s) < 0 ? Double.POSITIVE_INFINITY : s.best;
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Двунаправленный поиск по иерархии. Стоимость найденного маршрута сохраняется в s.best,
+     * ребра к предыдущим городам — в обеих сторонах поиска.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @param s рабочие массивы запроса
+     * @return город встречи прямого и обратного поиска или -1, если путь не найден
+     */
+    private int query(int from, int to, QueryScratch s) {
+        s.reset();
+        s.visit(s.forward, from, 0.0, -1);
+        s.visit(s.backward, to, 0.0, -1);
+        s.forwardQueue.insertOrDecrease(from, 0.0);
+        s.backwardQueue.insertOrDecrease(to, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 2;
+        while (true) {
+            double forwardMin = s.forwardQueue.peekPriority();
+            double backwardMin = s.backwardQueue.peekPriority();
+            if (Math.min(forwardMin, backwardMin) >= best) {
+                break;
+            }
+            boolean forward = forwardMin <= backwardMin;
+            SearchSide side = forward ? s.forward : s.backward;
+            SearchSide other = forward ? s.backward : s.forward;
+            IndexedDaryHeap queue = forward ? s.forwardQueue : s.backwardQueue;
+            int v = queue.poll();
+            double cost = side.dist[v];
+            settled++;
+            if (other.stamp[v] == s.epoch && cost + other.dist[v] < best) {
+                best = cost + other.dist[v];
+                meeting = v;
+            }
+            int[] offsets = forward ? upOffsets : downOffsets;
+            int[] edges = forward ? upEdges : downEdges;
+            relaxed += offsets[v + 1] - offsets[v];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int e = edges[i];
+                int neighbor = forward ? edgeTo[e] : edgeFrom[e];
+                double candidate = cost + edgeCost[e];
+                if (side.stamp[neighbor] != s.epoch || candidate < side.dist[neighbor]) {
+                    s.visit(side, neighbor, candidate, e);
+                    queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+            peak = Math.max(peak, s.forwardQueue.size() + s.backwardQueue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        s.best = best;
+        return meeting;
+    }
+
+    /**
+     * Выполняет полный поиск Дейкстры из города только по ребрам к более важным городам:
+     * прямой поиск идет по исходящим ребрам, обратный — по входящим.
+     * Используется таблицей стоимостей CostMatrix (метод корзин).
+     * @param node номер города начала
+     * @param forward true для прямого поиска, false для обратного
+     * @param visitor получает каждый извлеченный из очереди город и стоимость до него
+     */
+    void upwardSearch(int node, boolean forward, SettledVisitor visitor) {
+        QueryScratch s = scratch.borrow();
+        try {
+            upwardSearch(node, forward, visitor, s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    private void upwardSearch(int node, boolean forward, SettledVisitor visitor, QueryScratch s) {
+        s.reset();
+        SearchSide side = forward ? s.forward : s.backward;
+        IndexedDaryHeap queue = forward ? s.forwardQueue : s.backwardQueue;
+        int[] offsets = forward ? upOffsets : downOffsets;
+        int[] edges = forward ? upEdges : downEdges;
+        s.visit(side, node, 0.0, -1);
+        queue.insertOrDecrease(node, 0.0);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            double cost = side.dist[v];
+            visitor.settled(v, cost);
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int e = edges[i];
+                int neighbor = forward ? edgeTo[e] : edgeFrom[e];
+                double candidate = cost + edgeCost[e];
+                if (side.stamp[neighbor] != s.epoch || candidate < side.dist[neighbor]) {
+                    s.visit(side, neighbor, candidate, e);
+                    queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Разворачивает ребро (возможно, короткое) в последовательность реальных городов
+     * и добавляет в маршрут все города после начала ребра.
+     * @param edge номер ребра
+     * @param path маршрут, к которому добавляются города
+     */
+    private void unpack(int edge, List<City> path) {
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = edge;
+        while (size > 0) {
+            int e = stack[--size];
+            if (edgeFirst[e] < 0) {
+                path.add(graph.cityAt(edgeTo[e]));
+                continue;
+            }
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[size++] = edgeSecond[e];
+            stack[size++] = edgeFirst[e];
+        }
+    }
+
+    /**
+     * Сохраняет иерархию в поток в двоичном виде.
+     * Поток не закрывается.
+     * @param out поток для записи
+     * @return true если иерархия успешно сохранена
+     */
+    public boolean writeTo(OutputStream out) {
+        try {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(FORMAT_MAGIC);
+            data.writeInt(rank.length);
+            data.writeInt(edgeFrom.length);
+            for (int r : rank) {
+                data.writeInt(r);
+            }
+            for (int e = 0; e < edgeFrom.length; e++) {
+                data.writeInt(edgeFrom[e]);
+                data.writeInt(edgeTo[e]);
+                data.writeDouble(edgeCost[e]);
+                data.writeInt(edgeFirst[e]);
+                data.writeInt(edgeSecond[e]);
+            }
+            data.flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ошибка записи иерархии: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Загружает иерархию, ранее сохраненную методом writeTo, для того же снимка графа.
+     * Поток не закрывается.
+     * @param in поток для чтения
+     * @param graph снимок графа, для которого строилась иерархия
+     * @return иерархия или null, если данные повреждены или не соответствуют снимку
+     */
+    public static ContractionHierarchy readFrom(InputStream in, CityGraph graph) {
+        if (in == null || graph == null) {
+            System.out.println("Ошибка: поток и снимок графа не могут быть null.");
+            return null;
+        }
+        try {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            if (data.readInt() != FORMAT_MAGIC) {
+                System.out.println("Ошибка: неизвестный формат иерархии.");
+                return null;
+            }
+            int n = data.readInt();
+            int m = data.readInt();
+            if (n != graph.cityCount() || m < graph.routeCount()) {
+                System.out.println("Ошибка: иерархия построена для другого графа.");
+                return null;
+            }
+            int[] rank = new int[n];
+            boolean[] ranked = new boolean[n];
+            for (int v = 0; v < n; v++) {
+                int r = data.readInt();
+                if (r < 0 || r >= n || ranked[r]) {
+                    System.out.println("Ошибка: иерархия повреждена (порядок городов).");
+                    return null;
+                }
+                ranked[r] = true;
+                rank[v] = r;
+            }
+            // Массивы растут по мере чтения: число ребер из заголовка не заставляет
+            // выделять память под данные, которых в потоке нет.
+            int capacity = Math.min(m, 1 << 16);
+            int[] from = new int[capacity];
+            int[] to = new int[capacity];
+            double[] cost = new double[capacity];
+            int[] first = new int[capacity];
+            int[] second = new int[capacity];
+            int routes = graph.routeCount();
+            int source = 0;
+            for (int e = 0; e < m; e++) {
+                if (e == from.length) {
+                    capacity = (int) Math.min(m, 2L * capacity);
+                    from = Arrays.copyOf(from, capacity);
+                    to = Arrays.copyOf(to, capacity);
+                    cost = Arrays.copyOf(cost, capacity);
+                    first = Arrays.copyOf(first, capacity);
+                    second = Arrays.copyOf(second, capacity);
+                }
+                from[e] = data.readInt();
+                to[e] = data.readInt();
+                cost[e] = data.readDouble();
+                first[e] = data.readInt();
+                second[e] = data.readInt();
+                if (e < routes) {
+                    while (e >= graph.firstRoute(source) + graph.outDegree(source)) {
+                        source++;
+                    }
+                    if (from[e] != source || to[e] != graph.routeTarget(e) || cost[e] != graph.routeCost(e)
+                            || first[e] != -1 || second[e] != -1) {
+                        System.out.println("Ошибка: иерархия построена для другого графа.");
+                        return null;
+                    }
+                } else if (!validShortcut(e, rank, from, to, cost, first, second)) {
+                    System.out.println("Ошибка: иерархия повреждена (ребро " + e + ").");
+                    return null;
+                }
+            }
+            return new ContractionHierarchy(graph, rank, from, to, cost, first, second);
+        } catch (IOException e) {
+            System.out.println("Ошибка чтения иерархии: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Проверяет короткое ребро e: обе его половины — более ранние ребра, идущие
+     * через общий город, стянутый раньше концов ребра, а стоимость равна сумме половин.
+     * @return true если ребро корректно
+     */
+    private static boolean validShortcut(int e, int[] rank, int[] from, int[] to, double[] cost,
+                                         int[] first, int[] second) {
+        int n = rank.length;
+        int u = from[e];
+        int w = to[e];
+        int a = first[e];
+        int b = second[e];
+        if (u < 0 || u >= n || w < 0 || w >= n || a < 0 || a >= e || b < 0 || b >= e) {
+            return false;
+        }
+        int via = to[a];
+        return from[a] == u && from[b] == via && to[b] == w
+                && rank[via] < rank[u] && rank[via] < rank[w]
+                && cost[e] == cost[a] + cost[b];
+    }
+
+    /**
+     * Состояние одного направления поиска. Значения действительны только для городов,
+     * отметка которых совпадает с номером текущего запроса.
+     */
+    private static final class SearchSide {
+        final double[] dist;
+        final int[] parentEdge;
+        final int[] stamp;
+
+        SearchSide(int n) {
+            dist = new double[n];
+            parentEdge = new int[n];
+            stamp = new int[n];
+        }
+    }
+
+    /**
+     * Рабочие массивы запроса; берутся из пула на время запроса и переиспользуются без очистки за O(V).
+     */
+    private static final class QueryScratch {
+        final SearchSide forward;
+        final SearchSide backward;
+        final IndexedDaryHeap forwardQueue;
+        final IndexedDaryHeap backwardQueue;
+        int epoch;
+        double best;
+
+        QueryScratch(int n) {
+            forward = new SearchSide(n);
+            backward = new SearchSide(n);
+            forwardQueue = new IndexedDaryHeap(n);
+            backwardQueue = new IndexedDaryHeap(n);
+        }
+
+        void reset() {
+            forwardQueue.clear();
+            backwardQueue.clear();
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(forward.stamp, 0);
+                Arrays.fill(backward.stamp, 0);
+                epoch = 1;
+            }
+        }
+
+        void visit(SearchSide side, int node, double cost, int parentEdge) {
+            side.stamp[node] = epoch;
+            side.dist[node] = cost;
+            side.parentEdge[node] = parentEdge;
+        }
+    }
+
+    /**
+     * Получатель городов, извлеченных из очереди при поиске по иерархии.
+     */
+    interface SettledVisitor {
+        /**
+         * Вызывается для каждого извлеченного города.
+         * @param node номер города
+         * @param cost стоимость до города
+         */
+        void settled(int node, double cost);
+    }
+
+    /**
+     * Построитель иерархии: хранит изменяемый граф со всеми ребрами и выполняет стягивание.
+     */
+    private static final class Builder {
+        private final CityGraph graph;
+        private final int n;
+        private int edgeCount;
+        private int[] from;
+        private int[] to;
+        private double[] cost;
+        private int[] first;
+        private int[] second;
+        private final int[][] out;
+        private final int[] outSize;
+        private final int[][] in;
+        private final int[] inSize;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        private final int[] level;
+        private final boolean[] selected;
+        private final Queue<WitnessScratch> witnessPool = new ConcurrentLinkedQueue<>();
+
+        Builder(CityGraph graph) {
+            this.graph = graph;
+            this.n = graph.cityCount();
+            int m = graph.routeCount();
+            from = new int[Math.max(16, m * 2)];
+            to = new int[from.length];
+            cost = new double[from.length];
+            first = new int[from.length];
+            second = new int[from.length];
+            out = new int[n][];
+            in = new int[n][];
+            outSize = new int[n];
+            inSize = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            selected = new boolean[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new int[Math.max(2, graph.outDegree(v))];
+                in[v] = new int[2];
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = graph.firstRoute(v); e < graph.firstRoute(v) + graph.outDegree(v); e++) {
+                    addEdge(v, graph.routeTarget(e), graph.routeCost(e), -1, -1);
+                }
+            }
+        }
+
+        ContractionHierarchy build() {
+            int[] priority = new int[n];
+            IntStream.range(0, n).parallel().forEach(v -> priority[v] = priority(v, new ArrayList<>()));
+
+            int[] rank = new int[n];
+            int next = 0;
+            int[] remaining = IntStream.range(0, n).toArray();
+            int remainingCount = n;
+            while (remainingCount > 0) {
+                int[] pending = remaining;
+                int[] round = IntStream.range(0, remainingCount).parallel()
+                        .map(i -> pending[i])
+                        .filter(v -> isLocalMinimum(v, priority))
+                        .toArray();
+                for (int v : round) {
+                    selected[v] = true;
+                }
+                List<List<int[]>> shortcuts = Arrays.stream(round).parallel()
+                        .mapToObj(v -> {
+                            List<int[]> found = new ArrayList<>();
+                            priority[v] = priority(v, found);
+                            return found;
+                        })
+                        .collect(Collectors.toList());
+
+                // Приоритеты выбранных городов пересчитаны; город, который перестал быть
+                // минимальным среди соседей, ждет следующего раунда (ленивое обновление).
+                boolean[] accepted = new boolean[round.length];
+                for (int i = 0; i < round.length; i++) {
+                    accepted[i] = isLocalMinimum(round[i], priority);
+                }
+                for (int i = 0; i < round.length; i++) {
+                    int v = round[i];
+                    selected[v] = false;
+                    if (!accepted[i]) {
+                        continue;
+                    }
+                    for (int[] sc : shortcuts.get(i)) {
+                        addEdge(sc[0], sc[1], cost[sc[2]] + cost[sc[3]], sc[2], sc[3]);
+                    }
+                    contracted[v] = true;
+                    rank[v] = next++;
+                }
+                for (int i = 0; i < round.length; i++) {
+                    if (!accepted[i]) {
+                        continue;
+                    }
+                    int v = round[i];
+                    for (int j = 0; j < outSize[v]; j++) {
+                        updateNeighbor(to[out[v][j]], v, priority);
+                    }
+                    for (int j = 0; j < inSize[v]; j++) {
+                        updateNeighbor(from[in[v][j]], v, priority);
+                    }
+                }
+
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!contracted[remaining[i]]) {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+            }
+            return new ContractionHierarchy(graph, rank,
+                    Arrays.copyOf(from, edgeCount), Arrays.copyOf(to, edgeCount),
+                    Arrays.copyOf(cost, edgeCount), Arrays.copyOf(first, edgeCount),
+                    Arrays.copyOf(second, edgeCount));
+        }
+
+        /**
+         * Проверяет, что приоритет города меньше, чем у всех его нестянутых соседей
+         * (при равных приоритетах меньше номер). Город с наименьшим приоритетом
+         * всегда проходит проверку.
+         */
+        private boolean isLocalMinimum(int v, int[] priority) {
+            long own = encode(priority[v], v);
+            for (int i = 0; i < outSize[v]; i++) {
+                int w = to[out[v][i]];
+                if (w != v && !contracted[w] && encode(priority[w], w) < own) return false;
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                int w = from[in[v][i]];
+                if (w != v && !contracted[w] && encode(priority[w], w) < own) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Учитывает стягивание города v в данных его соседа w. Приоритет соседа
+         * меняется на изменение числа стянутых соседей и уровня; разность ребер
+         * пересчитывается, когда сосед будет выбран для стягивания.
+         */
+        private void updateNeighbor(int w, int v, int[] priority) {
+            if (contracted[w]) {
+                return;
+            }
+            int newLevel = Math.max(level[w], level[v] + 1);
+            priority[w] += 1 + newLevel - level[w];
+            contractedNeighbors[w]++;
+            level[w] = newLevel;
+        }
+
+        /**
+         * Кодирует приоритет и номер города в одно число так, что порядок чисел
+         * совпадает с порядком приоритетов.
+         */
+        private static long encode(int priority, int v) {
+            return ((long) priority << 32) | (v & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Оценивает важность города: удвоенная разность между числом добавляемых
+         * коротких ребер и числом удаляемых ребер, плюс число уже стянутых соседей,
+         * плюс уровень города в иерархии. Два последних слагаемых распределяют
+         * стягивание равномерно по графу.
+         * Найденные короткие ребра добавляются в shortcuts.
+         */
+        private int priority(int v, List<int[]> shortcuts) {
+            int degree = 0;
+            for (int i = 0; i < outSize[v]; i++) {
+                if (!contracted[to[out[v][i]]]) degree++;
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                if (!contracted[from[in[v][i]]]) degree++;
+            }
+            findShortcuts(v, shortcuts);
+            return 2 * (shortcuts.size() - degree) + contractedNeighbors[v] + level[v];
+        }
+
+        /**
+         * Находит короткие ребра, необходимые при стягивании города v:
+         * для каждой пары соседей u -> v -> w ребро нужно, если поиск свидетеля
+         * из u в обход v и других выбранных в раунде городов не нашел пути не дороже.
+         * Обход выбранных городов нужен потому, что они стягиваются одновременно с v.
+         * Каждое найденное ребро записывается как {u, w, ребро u->v, ребро v->w}.
+         */
+        private void findShortcuts(int v, List<int[]> result) {
+            WitnessScratch s = witnessPool.poll();
+            if (s == null) {
+                s = new WitnessScratch(n);
+            }
+            try {
+                findShortcuts(v, result, s);
+            } finally {
+                witnessPool.offer(s);
+            }
+        }
+
+        /**
+         * Поиск коротких ребер с заданными рабочими массивами поиска свидетеля.
+         */
+        private void findShortcuts(int v, List<int[]> result, WitnessScratch s) {
+            for (int i = 0; i < inSize[v]; i++) {
+                int e1 = in[v][i];
+                int u = from[e1];
+                if (contracted[u]) continue;
+                double maxCost = 0;
+                for (int j = 0; j < outSize[v]; j++) {
+                    int e2 = out[v][j];
+                    int w = to[e2];
+                    if (!contracted[w] && w != u) {
+                        maxCost = Math.max(maxCost, cost[e1] + cost[e2]);
+                    }
+                }
+                if (maxCost == 0) continue;
+                s.search(this, u, v, maxCost);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int e2 = out[v][j];
+                    int w = to[e2];
+                    if (contracted[w] || w == u) continue;
+                    double via = cost[e1] + cost[e2];
+                    if (s.distance(w) > via) {
+                        result.add(new int[]{u, w, e1, e2});
+                    }
+                }
+            }
+        }
+
+        private void addEdge(int u, int w, double c, int e1, int e2) {
+            if (edgeCount == from.length) {
+                int capacity = from.length * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                cost = Arrays.copyOf(cost, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+            }
+            int e = edgeCount++;
+            from[e] = u;
+            to[e] = w;
+            cost[e] = c;
+            first[e] = e1;
+            second[e] = e2;
+            if (outSize[u] == out[u].length) {
+                out[u] = Arrays.copyOf(out[u], out[u].length * 2);
+            }
+            out[u][outSize[u]++] = e;
+            if (inSize[w] == in[w].length) {
+                in[w] = Arrays.copyOf(in[w], in[w].length * 2);
+            }
+            in[w][inSize[w]++] = e;
+        }
+    }
+
+    /**
+     * Рабочие массивы поиска свидетеля. Принадлежат построителю: потоки построения берут
+     * их из его пула и возвращают обратно, поэтому после построения массивы не остаются
+     * в потоках общего пула ForkJoinPool.
+     */
+    private static final class WitnessScratch {
+        final double[] dist;
+        final int[] stamp;
+        final IndexedDaryHeap queue;
+        int epoch;
+
+        WitnessScratch(int n) {
+            dist = new double[n];
+            stamp = new int[n];
+            queue = new IndexedDaryHeap(n);
+        }
+
+        double distance(int v) {
+            return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Ограниченный поиск Дейкстры из source по нестянутым городам в обход excluded
+         * и городов, выбранных для стягивания в текущем раунде.
+         */
+        void search(Builder b, int source, int excluded, double maxCost) {
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            queue.clear();
+            stamp[source] = epoch;
+            dist[source] = 0.0;
+            queue.insertOrDecrease(source, 0.0);
+            int settled = 0;
+            while (!queue.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                int v = queue.poll();
+                double cost = dist[v];
+                if (cost > maxCost) break;
+                settled++;
+                for (int i = 0; i < b.outSize[v]; i++) {
+                    int e = b.out[v][i];
+                    int w = b.to[e];
+                    if (w == excluded || b.contracted[w] || b.selected[w]) continue;
+                    double candidate = cost + b.cost[e];
+                    if (stamp[w] != epoch || candidate < dist[w]) {
+                        stamp[w] = epoch;
+                        dist[w] = candidate;
+                        queue.insertOrDecrease(w, candidate);
+                    }
+                }
+            }
+        }
+    }
+}
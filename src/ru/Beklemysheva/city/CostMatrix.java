@@ -0,0 +1,344 @@
+/* Таблица стоимостей маршрутов «многие ко многим» */
+
+package ru.Beklemysheva.city;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Таблица минимальных стоимостей от каждого города начала до каждого города назначения.
+ * Вместо N×M отдельных поисков выполняется один поиск на строку: по снимку графа —
+ * поиск Дейкстры, который останавливается, когда извлечены все города назначения;
+ * по иерархии сжатия — метод корзин: по одному обратному поиску вверх из каждого города
+ * назначения и по одному прямому поиску вверх из каждого города начала.
+ * Строки вычисляются параллельно в ForkJoinPool.
+ *
+ * Результат — массив double[] по строкам: стоимость от sources[i] до targets[j]
+ * находится в позиции i * targets.size() + j; Double.POSITIVE_INFINITY означает,
+ * что пути нет или город не входит в снимок.
+ *
+ * Таблицу можно сразу записать в файл, отображенный в память, не создавая массив целиком:
+ * строки вычисляются окнами по 16 МБ, и каждое окно копируется в свою часть файла.
+ * Структура файла (порядок байтов little-endian): заголовок из четырех int — сигнатура,
+ * версия, число строк и число столбцов; затем стоимости double по строкам.
+ */
+public final class CostMatrix {
+    private static final int MAGIC = 0x434D5458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final long WINDOW_BYTES = 1L << 24;
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private CostMatrix() {}
+
+    /**
+     * Вычисление одной строки таблицы.
+     */
+    private interface RowSolver {
+        /**
+         * Записывает стоимости от города начала до всех городов назначения.
+         * @param source номер города начала в снимке (-1 для города вне снимка)
+         * @param row массив, в который записывается строка
+         * @param offset позиция первого столбца строки в row
+         */
+        void solve(int source, double[] row, int offset);
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей по снимку графа в общем пуле потоков.
+     * @param graph снимок графа
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @return стоимости по строкам или пустой массив при ошибке
+     */
+    public static double[] compute(CityGraph graph, List<City> sources, List<City> targets) {
+        return compute(graph, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей по снимку графа в указанном пуле потоков.
+     * @param graph снимок графа
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @param pool пул потоков, в котором вычисляются строки
+     * @return стоимости по строкам или пустой массив при ошибке
+     */
+    public static double[] compute(CityGraph graph, List<City> sources, List<City> targets, ForkJoinPool pool) {
+        if (graph == null || !isValid(sources, targets, pool) || !fitsArray(sources, targets)) {
+            return new double[0];
+        }
+        int[] rows = ids(graph, sources);
+        RowSolver solver = graphSolver(graph, ids(graph, targets));
+        return compute(rows, targets.size(), solver, pool);
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей методом корзин по иерархии сжатия в общем пуле потоков.
+     * @param hierarchy иерархия сжатия
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @return стоимости по строкам или пустой массив при ошибке
+     */
+    public static double[] compute(ContractionHierarchy hierarchy, List<City> sources, List<City> targets) {
+        return compute(hierarchy, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей методом корзин по иерархии сжатия в указанном пуле потоков.
+     * @param hierarchy иерархия сжатия
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @param pool пул потоков, в котором выполняются поиски
+     * @return стоимости по строкам или пустой массив при ошибке
+     */
+    public static double[] compute(ContractionHierarchy hierarchy, List<City> sources, List<City> targets,
+                                   ForkJoinPool pool) {
+        if (hierarchy == null || !isValid(sources, targets, pool) || !fitsArray(sources, targets)) {
+            return new double[0];
+        }
+        CityGraph graph = hierarchy.getGraph();
+        int[] rows = ids(graph, sources);
+        RowSolver solver = bucketSolver(hierarchy, ids(graph, targets), pool);
+        return compute(rows, targets.size(), solver, pool);
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей по снимку графа и записывает ее в файл.
+     * @param graph снимок графа
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @param file путь к файлу
+     * @return true если таблица успешно записана
+     */
+    public static boolean write(CityGraph graph, List<City> sources, List<City> targets, java.nio.file.Path file) {
+        if (graph == null || !isValid(sources, targets, ForkJoinPool.commonPool())) {
+            return false;
+        }
+        RowSolver solver = graphSolver(graph, ids(graph, targets));
+        return write(ids(graph, sources), targets.size(), solver, file);
+    }
+
+    /**
+     * Вычисляет таблицу стоимостей методом корзин по иерархии сжатия и записывает ее в файл.
+     * @param hierarchy иерархия сжатия
+     * @param sources города начала (строки)
+     * @param targets города назначения (столбцы)
+     * @param file путь к файлу
+     * @return true если таблица успешно записана
+     */
+    public static boolean write(ContractionHierarchy hierarchy, List<City> sources, List<City> targets,
+                                java.nio.file.Path file) {
+        if (hierarchy == null || !isValid(sources, targets, ForkJoinPool.commonPool())) {
+            return false;
+        }
+        CityGraph graph = hierarchy.getGraph();
+        RowSolver solver = bucketSolver(hierarchy, ids(graph, targets), ForkJoinPool.commonPool());
+        return write(ids(graph, sources), targets.size(), solver, file);
+    }
+
+    /**
+     * Проверяет аргументы запроса.
+     * @return true если аргументы заданы
+     */
+    private static boolean isValid(List<City> sources, List<City> targets, ForkJoinPool pool) {
+        if (sources == null || targets == null || pool == null) {
+            System.out.println("Ошибка: списки городов и пул потоков не могут быть null.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, помещается ли таблица в один массив double[].
+     * @return true если помещается
+     */
+    private static boolean fitsArray(List<City> sources, List<City> targets) {
+        if ((long) sources.size() * targets.size() > Integer.MAX_VALUE - 8) {
+            System.out.println("Ошибка: таблица стоимостей слишком велика для массива.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает номера городов в снимке.
+     * @return номера (-1 для null и городов вне снимка)
+     */
+    private static int[] ids(CityGraph graph, List<City> cities) {
+        int[] ids = new int[cities.size()];
+        for (int i = 0; i < ids.length; i++) {
+            City city = cities.get(i);
+            ids[i] = city == null ? -1 : graph.idOf(city);
+        }
+        return ids;
+    }
+
+    /**
+     * Строка таблицы по снимку графа: поиск Дейкстры до извлечения всех городов назначения.
+     */
+    private static RowSolver graphSolver(CityGraph graph, int[] columns) {
+        boolean[] isTarget = new boolean[graph.cityCount()];
+        int targetCount = 0;
+        for (int id : columns) {
+            if (id >= 0 && !isTarget[id]) {
+                isTarget[id] = true;
+                targetCount++;
+            }
+        }
+        int distinct = targetCount;
+        return (source, row, offset) -> {
+            if (source < 0) {
+                Arrays.fill(row, offset, offset + columns.length, Double.POSITIVE_INFINITY);
+            } else {
+                graph.costsFrom(source, columns, isTarget, distinct, row, offset);
+            }
+        };
+    }
+
+    /**
+     * Строка таблицы методом корзин. Обратный поиск вверх из каждого города назначения
+     * оставляет в корзине каждого извлеченного города пару (столбец, стоимость);
+     * прямой поиск вверх из города начала просматривает корзины извлеченных городов.
+     * Одинаковые города назначения ищутся один раз, а столбцы-повторы копируются.
+     */
+    private static RowSolver bucketSolver(ContractionHierarchy hierarchy, int[] columns, ForkJoinPool pool) {
+        int n = hierarchy.getGraph().cityCount();
+        int[] firstColumn = new int[columns.length];
+        int[] columnOf = new int[n];
+        Arrays.fill(columnOf, -1);
+        for (int j = 0; j < columns.length; j++) {
+            int id = columns[j];
+            if (id >= 0 && columnOf[id] < 0) {
+                columnOf[id] = j;
+            }
+            firstColumn[j] = id < 0 ? -1 : columnOf[id];
+        }
+
+        int[][] nodes = new int[columns.length][];
+        double[][] costs = new double[columns.length][];
+        pool.submit(() -> IntStream.range(0, columns.length).parallel().forEach(j -> {
+            if (firstColumn[j] != j) {
+                return;
+            }
+            int[][] foundNodes = {new int[16]};
+            double[][] foundCosts = {new double[16]};
+            int[] count = {0};
+            hierarchy.upwardSearch(columns[j], false, (node, cost) -> {
+                if (count[0] == foundNodes[0].length) {
+                    foundNodes[0] = Arrays.copyOf(foundNodes[0], count[0] * 2);
+                    foundCosts[0] = Arrays.copyOf(foundCosts[0], count[0] * 2);
+                }
+                foundNodes[0][count[0]] = node;
+                foundCosts[0][count[0]++] = cost;
+            });
+            nodes[j] = Arrays.copyOf(foundNodes[0], count[0]);
+            costs[j] = Arrays.copyOf(foundCosts[0], count[0]);
+        })).join();
+
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] settled : nodes) {
+            if (settled != null) {
+                for (int node : settled) {
+                    bucketOffsets[node + 1]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketColumns = new int[bucketOffsets[n]];
+        double[] bucketCosts = new double[bucketOffsets[n]];
+        int[] fill = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < columns.length; j++) {
+            if (nodes[j] != null) {
+                for (int k = 0; k < nodes[j].length; k++) {
+                    int slot = fill[nodes[j][k]]++;
+                    bucketColumns[slot] = j;
+                    bucketCosts[slot] = costs[j][k];
+                }
+            }
+        }
+
+        return (source, row, offset) -> {
+            Arrays.fill(row, offset, offset + columns.length, Double.POSITIVE_INFINITY);
+            if (source < 0) {
+                return;
+            }
+            hierarchy.upwardSearch(source, true, (node, cost) -> {
+                for (int k = bucketOffsets[node]; k < bucketOffsets[node + 1]; k++) {
+                    int index = offset + bucketColumns[k];
+                    double candidate = cost + bucketCosts[k];
+                    if (candidate < row[index]) {
+                        row[index] = candidate;
+                    }
+                }
+            });
+            for (int j = 0; j < columns.length; j++) {
+                if (firstColumn[j] >= 0 && firstColumn[j] != j) {
+                    row[offset + j] = row[offset + firstColumn[j]];
+                }
+            }
+        };
+    }
+
+    /**
+     * Вычисляет все строки параллельно в одном массиве.
+     */
+    private static double[] compute(int[] rows, int columnCount, RowSolver solver, ForkJoinPool pool) {
+        double[] result = new double[rows.length * columnCount];
+        pool.submit(() -> IntStream.range(0, rows.length).parallel()
+                .forEach(i -> solver.solve(rows[i], result, i * columnCount))).join();
+        return result;
+    }
+
+    /**
+     * Вычисляет строки окнами по WINDOW_BYTES байт и записывает каждое окно
+     * в отображенную в память часть файла.
+     */
+    private static boolean write(int[] rows, int columnCount, RowSolver solver, java.nio.file.Path file) {
+        if (file == null) {
+            System.out.println("Ошибка: путь к файлу не может быть null.");
+            return false;
+        }
+        long rowBytes = 8L * columnCount;
+        if (rowBytes > Integer.MAX_VALUE) {
+            System.out.println("Ошибка: строка таблицы стоимостей слишком велика.");
+            return false;
+        }
+        int rowsPerWindow = (int) Math.max(1, Math.min(rows.length, WINDOW_BYTES / Math.max(1, rowBytes)));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows.length).putInt(columnCount);
+            header.force();
+            double[] window = new double[rowsPerWindow * columnCount];
+            for (int first = 0; first < rows.length; first += rowsPerWindow) {
+                int start = first;
+                int count = Math.min(rowsPerWindow, rows.length - first);
+                ForkJoinPool.commonPool().submit(() -> IntStream.range(0, count).parallel()
+                        .forEach(i -> solver.solve(rows[start + i], window, i * columnCount))).join();
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + rowBytes * first, rowBytes * count);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                DoubleBuffer doubles = mapped.asDoubleBuffer();
+                doubles.put(window, 0, count * columnCount);
+                mapped.force();
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ошибка записи таблицы стоимостей: " + e.getMessage());
+            return false;
+        }
+    }
+}
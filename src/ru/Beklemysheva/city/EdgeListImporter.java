@@ -0,0 +1,164 @@
+/* Потоковый импорт сети дорог из списка ребер (CSV/TSV) */
+
+package ru.Beklemysheva.city;
+
+import ru.Beklemysheva.inputhandler.Inputhandler;
+import ru.Beklemysheva.inputhandler.config.FileCheckConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Импорт сети дорог из текстового списка ребер вида "откуда,куда,стоимость"
+ * (для файлов .tsv разделитель — табуляция).
+ * Файл читается за один буферизованный проход, в памяти хранятся только города:
+ * одинаковые названия сводятся к одному объекту City. Некорректные строки
+ * сообщаются с номером строки и пропускаются. Пустые строки и комментарии (строки,
+ * начинающиеся с #) не учитываются; первая строка данных с нечисловой стоимостью
+ * считается заголовком.
+ */
+public final class EdgeListImporter {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private EdgeListImporter() {}
+
+    /**
+     * Запрашивает у пользователя путь к файлу .csv или .tsv и импортирует его.
+     * @return города по названиям в порядке первого появления
+     */
+    public static Map<String, City> importFromUser() {
+        FileCheckConfig config = new FileCheckConfig.Builder()
+                .setCheckExistence(true)
+                .setCheckExtension(true)
+                .setAllowedExtensions(Arrays.asList(".csv", ".tsv"))
+                .build();
+        return importFile(Inputhandler.getFilePath(config));
+    }
+
+    /**
+     * Импортирует список ребер из файла.
+     * @param file путь к файлу .csv или .tsv
+     * @return города по названиям в порядке первого появления
+     *         (пустая таблица, если файл не удалось прочитать)
+     */
+    public static Map<String, City> importFile(java.nio.file.Path file) {
+        if (file == null) {
+            System.out.println("Ошибка: путь к файлу не может быть null.");
+            return Collections.emptyMap();
+        }
+        char separator = file.getFileName().toString().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        Map<String, City> cities = new LinkedHashMap<>();
+        long lineNumber = 0;
+        long imported = 0;
+        long errors = 0;
+        boolean dataSeen = false;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (!dataSeen) {
+                    dataSeen = true;
+                    if (isHeader(line, separator)) {
+                        continue;
+                    }
+                }
+                String error = importLine(line, separator, cities);
+                if (error == null) {
+                    imported++;
+                } else {
+                    errors++;
+                    if (errors <= MAX_REPORTED_ERRORS) {
+                        System.out.println("Строка " + lineNumber + ": " + error);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Ошибка чтения файла: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+
+        if (errors > MAX_REPORTED_ERRORS) {
+            System.out.println("... и еще " + (errors - MAX_REPORTED_ERRORS) + " некорректных строк.");
+        }
+        System.out.println("Импортировано маршрутов: " + imported + ", городов: " + cities.size()
+                + ", пропущено строк: " + errors);
+        return cities;
+    }
+
+    /**
+     * Проверяет, является ли строка заголовком: поле стоимости (последнее поле)
+     * не является числом.
+     * @param line строка файла
+     * @param separator разделитель полей
+     * @return true если строка — заголовок
+     */
+    private static boolean isHeader(String line, char separator) {
+        int last = line.lastIndexOf(separator);
+        if (last < 0) {
+            return false;
+        }
+        try {
+            Double.parseDouble(line.substring(last + 1).trim());
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Разбирает одну строку и добавляет маршрут.
+     * Сначала проверяется стоимость, затем названия городов.
+     * @param line строка файла
+     * @param separator разделитель полей
+     * @param cities уже известные города по названиям
+     * @return описание ошибки или null, если маршрут добавлен
+     */
+    private static String importLine(String line, char separator, Map<String, City> cities) {
+        int first = line.indexOf(separator);
+        int second = first < 0 ? -1 : line.indexOf(separator, first + 1);
+        if (second < 0 || line.indexOf(separator, second + 1) >= 0) {
+            return "ожидалось три поля: откуда" + separator + "куда" + separator + "стоимость";
+        }
+
+        double cost;
+        try {
+            cost = Double.parseDouble(line.substring(second + 1).trim());
+        } catch (NumberFormatException e) {
+            return "некорректная стоимость";
+        }
+        if (!(cost > 0) || Double.isInfinite(cost)) {
+            return "стоимость должна быть положительной";
+        }
+
+        String fromName = line.substring(0, first).trim();
+        String toName = line.substring(first + 1, second).trim();
+        if (fromName.isEmpty() || toName.isEmpty()) {
+            return "название города не может быть пустым";
+        }
+
+        City from = cities.computeIfAbsent(fromName, City::new);
+        City to = cities.computeIfAbsent(toName, City::new);
+        if (from.hasRouteTo(to)) {
+            return "маршрут " + fromName + " -> " + toName + " уже существует";
+        }
+        from.addRoute(to, cost);
+        return null;
+    }
+}
@@ -0,0 +1,290 @@
+/* Двоичный формат файла графа городов */
+
+package ru.Beklemysheva.city;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Компактный двоичный формат снимка графа CityGraph.
+ * Файл отображается в память (FileChannel.map), а массивы читаются из него целиком,
+ * без разбора текста и без создания объектов на каждый город и маршрут.
+ * Названия городов декодируются только при обращении к ним.
+ *
+ * read не возвращает представление над отображением: CityGraph хранит массивы в куче,
+ * поэтому при загрузке весь файл копируется в них за O(n + m), и в куче нужно около
+ * 12 байт на маршрут и 8 байт на город плюс длина названий (столько же, сколько занимает
+ * файл). Открытие без копирования, когда граф остается в отображенном файле
+ * и не занимает кучу, дает OffHeapGraph.map.
+ * При чтении размер файла сверяется с заголовком до выделения памяти, а смещения,
+ * города назначения и стоимости проверяются, поэтому поврежденный файл не загружается.
+ *
+ * Структура файла (порядок байтов little-endian):
+ * заголовок из четырех int — сигнатура, версия, число городов n, число маршрутов m;
+ * double[m] стоимости; int[n + 1] начало маршрутов каждого города; int[m] города назначения;
+ * int[n + 1] начало названия каждого города; названия городов подряд в UTF-8.
+ * Стоимости идут сразу после заголовка, чтобы быть выровненными по 8 байт.
+ */
+public final class GraphFile {
+    static final int MAGIC = 0x43475246;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private static final long MAX_CHUNK = 1L << 30;
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private GraphFile() {}
+
+    /**
+     * Сохраняет снимок графа в файл.
+     * @param graph снимок графа
+     * @param file путь к файлу
+     * @return true если снимок успешно сохранен
+     */
+    public static boolean write(CityGraph graph, java.nio.file.Path file) {
+        if (graph == null || file == null) {
+            System.out.println("Ошибка: снимок графа и путь к файлу не могут быть null.");
+            return false;
+        }
+        int n = graph.cityCount();
+        int m = graph.routeCount();
+        byte[][] names = new byte[n][];
+        long nameSize = 0;
+        for (int i = 0; i < n; i++) {
+            names[i] = graph.nameAt(i).getBytes(StandardCharsets.UTF_8);
+            nameSize += names[i].length;
+        }
+        if (nameSize > Integer.MAX_VALUE) {
+            System.out.println("Ошибка: таблица названий городов слишком велика.");
+            return false;
+        }
+        long size = HEADER_SIZE + 8L * m + 4L * (n + 1) + 4L * m + 4L * (n + 1) + nameSize;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel, size);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(n);
+            out.putInt(m);
+            for (int e = 0; e < m; e++) {
+                out.putDouble(graph.routeCost(e));
+            }
+            for (int i = 0; i < n; i++) {
+                out.putInt(graph.firstRoute(i));
+            }
+            out.putInt(m);
+            for (int e = 0; e < m; e++) {
+                out.putInt(graph.routeTarget(e));
+            }
+            int nameOffset = 0;
+            for (int i = 0; i < n; i++) {
+                out.putInt(nameOffset);
+                nameOffset += names[i].length;
+            }
+            out.putInt(nameOffset);
+            for (byte[] name : names) {
+                out.put(name);
+            }
+            out.finish();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ошибка записи файла графа: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Загружает снимок графа из файла, отображая его в память и копируя массивы в кучу.
+     * Время и память загрузки растут линейно с размером файла; чтобы не копировать
+     * граф в кучу, используйте OffHeapGraph.map.
+     * @param file путь к файлу
+     * @return снимок графа или null, если файл не удалось прочитать или он поврежден
+     */
+    public static CityGraph read(java.nio.file.Path file) {
+        if (file == null) {
+            System.out.println("Ошибка: путь к файлу не может быть null.");
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                System.out.println("Ошибка: файл графа поврежден.");
+                return null;
+            }
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            int n = header.getInt(8);
+            int m = header.getInt(12);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || n < 0 || m < 0) {
+                System.out.println("Ошибка: неизвестный формат файла графа.");
+                return null;
+            }
+            // Размер всех массивов известен из заголовка: проверяем его до выделения памяти,
+            // чтобы поврежденный заголовок не требовал гигабайты под несуществующие данные.
+            long fixedSize = HEADER_SIZE + 8L * m + 4L * (n + 1L) + 4L * m + 4L * (n + 1L);
+            if (n == Integer.MAX_VALUE || fixedSize > fileSize || fileSize - fixedSize > Integer.MAX_VALUE) {
+                System.out.println("Ошибка: файл графа поврежден (размер не соответствует заголовку).");
+                return null;
+            }
+            long position = HEADER_SIZE;
+            double[] costs = new double[m];
+            position = readDoubles(channel, position, costs);
+            int[] offsets = new int[n + 1];
+            position = readInts(channel, position, offsets);
+            int[] targets = new int[m];
+            position = readInts(channel, position, targets);
+            int[] nameOffsets = new int[n + 1];
+            position = readInts(channel, position, nameOffsets);
+            byte[] nameBytes = new byte[(int) (fileSize - position)];
+            if (!isMonotonic(offsets, m) || !isMonotonic(nameOffsets, nameBytes.length)) {
+                System.out.println("Ошибка: файл графа поврежден (смещения).");
+                return null;
+            }
+            for (int e = 0; e < m; e++) {
+                if (targets[e] < 0 || targets[e] >= n || !(costs[e] > 0) || Double.isInfinite(costs[e])) {
+                    System.out.println("Ошибка: файл графа поврежден (маршрут " + e + ").");
+                    return null;
+                }
+            }
+            readBytes(channel, position, nameBytes);
+            return new CityGraph(nameBytes, nameOffsets, offsets, targets, costs);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ошибка чтения файла графа: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Проверяет массив смещений: начинается с 0, не убывает и заканчивается значением last.
+     * @param offsets смещения
+     * @param last ожидаемое последнее смещение
+     * @return true если смещения корректны
+     */
+    static boolean isMonotonic(int[] offsets, int last) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != last) {
+            return false;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Отображает часть файла в память только для чтения.
+     */
+    static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Читает массив int из отображенного файла частями не больше MAX_CHUNK байт.
+     * @return позиция сразу после прочитанных данных
+     */
+    private static long readInts(FileChannel channel, long position, int[] target) throws IOException {
+        int done = 0;
+        while (done < target.length) {
+            int count = (int) Math.min(target.length - done, MAX_CHUNK / 4);
+            map(channel, position, 4L * count).asIntBuffer().get(target, done, count);
+            position += 4L * count;
+            done += count;
+        }
+        return position;
+    }
+
+    /**
+     * Читает массив double из отображенного файла частями не больше MAX_CHUNK байт.
+     * @return позиция сразу после прочитанных данных
+     */
+    private static long readDoubles(FileChannel channel, long position, double[] target) throws IOException {
+        int done = 0;
+        while (done < target.length) {
+            int count = (int) Math.min(target.length - done, MAX_CHUNK / 8);
+            map(channel, position, 8L * count).asDoubleBuffer().get(target, done, count);
+            position += 8L * count;
+            done += count;
+        }
+        return position;
+    }
+
+    /**
+     * Читает массив байт из отображенного файла частями не больше MAX_CHUNK байт.
+     */
+    private static void readBytes(FileChannel channel, long position, byte[] target) throws IOException {
+        int done = 0;
+        while (done < target.length) {
+            int count = (int) Math.min(target.length - done, MAX_CHUNK);
+            map(channel, position, count).get(target, done, count);
+            position += count;
+            done += count;
+        }
+    }
+
+    /**
+     * Последовательная запись в файл через отображенные в память окна.
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        Writer(FileChannel channel, long size) throws IOException {
+            this.channel = channel;
+            this.size = size;
+            openWindow(0);
+        }
+
+        private void openWindow(long position) throws IOException {
+            if (window != null) {
+                window.force();
+            }
+            windowStart = position;
+            long length = Math.min(MAX_CHUNK, size - position);
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                openWindow(windowStart + window.position());
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            window.putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            window.putDouble(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                ensure(1);
+                int count = Math.min(bytes.length - done, window.remaining());
+                window.put(bytes, done, count);
+                done += count;
+            }
+        }
+
+        void finish() {
+            if (window != null) {
+                window.force();
+            }
+        }
+    }
+}
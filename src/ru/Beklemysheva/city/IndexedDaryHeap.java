@@ -0,0 +1,211 @@
+/* Индексированная d-арная куча с приоритетами double */
+
+package ru.Beklemysheva.city;
+
+import java.util.Arrays;
+
+/**
+ * Очередь с приоритетом для поиска маршрутов по номерам городов.
+ * Элементы — номера от 0 до capacity - 1, приоритеты — примитивные double,
+ * поэтому вставка не создает объектов. Каждый номер хранится в куче не более одного раза:
+ * уменьшение приоритета выполняется на месте, без устаревших записей.
+ * Куча четверичная: она ниже двоичной, а четыре потомка лежат в памяти рядом.
+ *
+ * Массивы создаются один раз; clear() работает за O(size), поэтому одна куча
+ * переиспользуется для многих запросов. Если количество номеров заранее неизвестно
+ * (поиск по изменяемому графу нумерует города по мере обхода), емкость увеличивается
+ * через ensureCapacity. Экземпляр не потокобезопасен.
+ */
+public final class IndexedDaryHeap {
+    private static final int ARITY = 4;
+
+    private int[] heap;
+    private int[] position;
+    private double[] priority;
+    private int size;
+
+    /**
+     * Создает пустую кучу для номеров от 0 до capacity - 1.
+     * @param capacity количество возможных номеров
+     */
+    public IndexedDaryHeap(int capacity) {
+        if (capacity < 0) {
+            System.out.println("Ошибка: емкость кучи не может быть отрицательной.");
+            capacity = 0;
+        }
+        heap = new int[capacity];
+        position = new int[capacity];
+        priority = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Возвращает количество возможных номеров.
+     * @return емкость кучи
+     */
+    public int capacity() {
+        return heap.length;
+    }
+
+    /**
+     * Увеличивает емкость кучи, сохраняя ее содержимое. Емкость растет
+     * не меньше чем в полтора раза, поэтому добавление номеров по одному
+     * в среднем выполняется за O(1).
+     * @param capacity требуемое количество возможных номеров
+     */
+    public void ensureCapacity(int capacity) {
+        int old = heap.length;
+        if (capacity <= old) {
+            return;
+        }
+        int grown = Math.max(capacity, old + (old >> 1));
+        heap = Arrays.copyOf(heap, grown);
+        position = Arrays.copyOf(position, grown);
+        priority = Arrays.copyOf(priority, grown);
+        Arrays.fill(position, old, grown, -1);
+    }
+
+    /**
+     * Возвращает количество элементов в куче.
+     * @return количество элементов
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Проверяет, пуста ли куча.
+     * @return true если элементов нет
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Проверяет, находится ли номер в куче.
+     * @param id номер
+     * @return true если номер в куче
+     */
+    public boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    /**
+     * Возвращает приоритет номера, находящегося в куче.
+     * @param id номер в куче
+     * @return приоритет
+     */
+    public double priorityOf(int id) {
+        return priority[id];
+    }
+
+    /**
+     * Добавляет номер или уменьшает его приоритет, если номер уже в куче.
+     * Больший приоритет для номера в куче игнорируется.
+     * @param id номер
+     * @param value приоритет
+     * @return true если куча изменилась
+     */
+    public boolean insertOrDecrease(int id, double value) {
+        int index = position[id];
+        if (index < 0) {
+            priority[id] = value;
+            siftUp(size++, id);
+            return true;
+        }
+        if (value < priority[id]) {
+            priority[id] = value;
+            siftUp(index, id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Возвращает номер с наименьшим приоритетом, не извлекая его.
+     * @return номер или -1, если куча пуста
+     */
+    public int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * Возвращает наименьший приоритет в куче.
+     * @return приоритет или Double.POSITIVE_INFINITY, если куча пуста
+     */
+    public double peekPriority() {
+        return size == 0 ? Double.POSITIVE_INFINITY : priority[heap[0]];
+    }
+
+    /**
+     * Извлекает номер с наименьшим приоритетом. Его приоритет остается доступен через priorityOf.
+     * @return номер или -1, если куча пуста
+     */
+    public int poll() {
+        if (size == 0) {
+            return -1;
+        }
+        int top = heap[0];
+        position[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return top;
+    }
+
+    /**
+     * Удаляет все элементы за O(size).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index, int id) {
+        double value = priority[id];
+        while (index > 0) {
+            int parentIndex = (index - 1) / ARITY;
+            int parent = heap[parentIndex];
+            if (priority[parent] <= value) {
+                break;
+            }
+            heap[index] = parent;
+            position[parent] = index;
+            index = parentIndex;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+
+    private void siftDown(int index, int id) {
+        double value = priority[id];
+        while (true) {
+            int first = index * ARITY + 1;
+            if (first >= size) {
+                break;
+            }
+            int best = first;
+            double bestValue = priority[heap[first]];
+            int last = Math.min(first + ARITY, size);
+            for (int child = first + 1; child < last; child++) {
+                double childValue = priority[heap[child]];
+                if (childValue < bestValue) {
+                    best = child;
+                    bestValue = childValue;
+                }
+            }
+            if (bestValue >= value) {
+                break;
+            }
+            int moved = heap[best];
+            heap[index] = moved;
+            position[moved] = index;
+            index = best;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+}
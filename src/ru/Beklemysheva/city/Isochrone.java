@@ -0,0 +1,129 @@
+/* Города, достижимые из депо в пределах бюджета стоимости */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Изохрона: все города, в которые можно доехать из депо со стоимостью не больше заданной,
+ * вместе с минимальной стоимостью до каждого из них.
+ * Для одного депо выполняется один поиск Дейкстры, ограниченный бюджетом, а не поиск
+ * маршрута до каждого города отдельно. Для набора депо поиски выполняются параллельно
+ * по снимку графа; рабочие массивы поиска берутся из пула снимка на время поиска.
+ * Города в результатах сравниваются по ссылке.
+ */
+public final class Isochrone {
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private Isochrone() {}
+
+    /**
+     * Находит города, достижимые из депо в пределах бюджета, по текущим маршрутам городов.
+     * @param depot город начала
+     * @param budget наибольшая допустимая стоимость
+     * @return минимальная стоимость до каждого достижимого города, включая само депо
+     */
+    public static Map<City, Double> reachable(City depot, double budget) {
+        if (depot == null) {
+            System.out.println("Ошибка: депо не может быть null.");
+            return Collections.emptyMap();
+        }
+        if (!isValid(budget)) {
+            return Collections.emptyMap();
+        }
+        return RouteSearch.withinCost(depot, budget);
+    }
+
+    /**
+     * Находит города, достижимые из депо в пределах бюджета, по снимку графа.
+     * @param graph снимок графа
+     * @param depot город начала
+     * @param budget наибольшая допустимая стоимость
+     * @return минимальная стоимость до каждого достижимого города; пустой словарь,
+     *         если депо не входит в снимок
+     */
+    public static Map<City, Double> reachable(CityGraph graph, City depot, double budget) {
+        if (graph == null) {
+            System.out.println("Ошибка: снимок графа не может быть null.");
+            return Collections.emptyMap();
+        }
+        return graph.withinCost(depot, budget);
+    }
+
+    /**
+     * Находит изохроны для набора депо. Снимок графа строится по депо;
+     * пока маршруты не меняются, повторные вызовы используют тот же снимок
+     * и его рабочие массивы поиска (см. CityGraph.current).
+     * @param depots города начала
+     * @param budget наибольшая допустимая стоимость
+     * @return результаты в порядке депо
+     */
+    public static List<Map<City, Double>> reachable(List<City> depots, double budget) {
+        if (depots == null) {
+            System.out.println("Ошибка: список депо не может быть null.");
+            return Collections.emptyList();
+        }
+        List<City> starts = new ArrayList<>(depots.size());
+        for (City depot : depots) {
+            if (depot != null) {
+                starts.add(depot);
+            }
+        }
+        return reachable(CityGraph.current(starts), depots, budget);
+    }
+
+    /**
+     * Находит изохроны для набора депо по снимку графа в общем пуле потоков.
+     * @param graph снимок графа
+     * @param depots города начала
+     * @param budget наибольшая допустимая стоимость
+     * @return результаты в порядке депо
+     */
+    public static List<Map<City, Double>> reachable(CityGraph graph, List<City> depots, double budget) {
+        return reachable(graph, depots, budget, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Находит изохроны для набора депо по снимку графа в указанном пуле потоков.
+     * Депо, не входящему в снимок, соответствует пустой словарь.
+     * @param graph снимок графа
+     * @param depots города начала
+     * @param budget наибольшая допустимая стоимость
+     * @param pool пул потоков, в котором выполняются поиски
+     * @return результаты в порядке депо
+     */
+    public static List<Map<City, Double>> reachable(CityGraph graph, List<City> depots, double budget,
+                                                    ForkJoinPool pool) {
+        if (graph == null || depots == null || pool == null) {
+            System.out.println("Ошибка: снимок графа, список депо и пул потоков не могут быть null.");
+            return Collections.emptyList();
+        }
+        if (!isValid(budget)) {
+            return Collections.emptyList();
+        }
+        return pool.submit(() -> IntStream.range(0, depots.size()).parallel()
+                .mapToObj(i -> graph.withinCost(depots.get(i), budget))
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * Проверяет бюджет стоимости.
+     * @param budget бюджет
+     * @return true если бюджет — неотрицательное число
+     */
+    private static boolean isValid(double budget) {
+        if (!(budget >= 0)) {
+            System.out.println("Ошибка: бюджет стоимости должен быть неотрицательным числом.");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,396 @@
+/* Поиск нескольких кратчайших маршрутов без циклов (алгоритм Йена) */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Алгоритм Йена по снимку графа CityGraph.
+ * Один раз строится обратное дерево кратчайших путей до города конца: оно дает первый маршрут
+ * и точную нижнюю оценку стоимости до конца, которая используется как эвристика A*
+ * во всех последующих поисках ответвлений. Поиски ответвлений от каждого города
+ * предыдущего маршрута независимы и выполняются параллельно. Рабочие массивы поисков
+ * принадлежат одному запросу: потоки берут их из общего для запроса пула и возвращают
+ * обратно, а после запроса массивы становятся мусором и не остаются в потоках пула.
+ */
+final class KShortestPaths {
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private KShortestPaths() {}
+
+    /**
+     * Находит до k маршрутов без повторяющихся городов в порядке возрастания стоимости.
+     * @param graph снимок графа
+     * @param start город начала
+     * @param end город конца
+     * @param k максимальное количество маршрутов
+     * @return найденные маршруты (пустой список, если путь не существует)
+     */
+    static List<RouteResult> find(CityGraph graph, City start, City end, int k) {
+        int source = graph.idOf(start);
+        int target = graph.idOf(end);
+        if (source < 0 || target < 0) {
+            return Collections.emptyList();
+        }
+        double[] toEnd = new double[graph.cityCount()];
+        int[] next = new int[graph.cityCount()];
+        reverseTree(graph, target, toEnd, next);
+        if (toEnd[source] == Double.POSITIVE_INFINITY) {
+            return Collections.emptyList();
+        }
+
+        List<Candidate> found = new ArrayList<>();
+        found.add(treePath(graph, source, target, toEnd, next));
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        Set<Candidate> seen = new HashSet<>(found);
+        Queue<SpurScratch> pool = new ConcurrentLinkedQueue<>();
+        while (found.size() < k) {
+            Candidate previous = found.get(found.size() - 1);
+            List<Candidate> accepted = found;
+            Candidate[] spurs = IntStream.range(previous.deviation, previous.nodes.length - 1).parallel()
+                    .mapToObj(i -> spur(graph, pool, accepted, previous, i, target, toEnd, next))
+                    .toArray(Candidate[]::new);
+            for (Candidate spur : spurs) {
+                if (spur != null && seen.add(spur)) {
+                    candidates.add(spur);
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            found.add(candidates.poll());
+        }
+
+        List<RouteResult> results = new ArrayList<>(found.size());
+        for (Candidate candidate : found) {
+            City[] cities = new City[candidate.nodes.length];
+            for (int i = 0; i < cities.length; i++) {
+                cities[i] = graph.cityAt(candidate.nodes[i]);
+            }
+            results.add(new RouteResult(cities, candidate.cost()));
+        }
+        return results;
+    }
+
+    /**
+     * Строит обратное дерево кратчайших путей: стоимость до конца и следующий город для каждого города.
+     * @param graph снимок графа
+     * @param target номер города конца
+     * @param toEnd заполняется стоимостями до конца (Double.POSITIVE_INFINITY, если конец недостижим)
+     * @param next заполняется номером следующего города на кратчайшем пути к концу
+     */
+    private static void reverseTree(CityGraph graph, int target, double[] toEnd, int[] next) {
+        int n = graph.cityCount();
+        int m = graph.routeCount();
+        int[] reverseOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            reverseOffsets[graph.routeTarget(e) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseSources = new int[m];
+        double[] reverseCosts = new double[m];
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                int slot = fill[graph.routeTarget(e)]++;
+                reverseSources[slot] = u;
+                reverseCosts[slot] = graph.routeCost(e);
+            }
+        }
+
+        Arrays.fill(toEnd, Double.POSITIVE_INFINITY);
+        Arrays.fill(next, -1);
+        toEnd[target] = 0.0;
+        IndexedDaryHeap queue = new IndexedDaryHeap(n);
+        queue.insertOrDecrease(target, 0.0);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            for (int e = reverseOffsets[v]; e < reverseOffsets[v + 1]; e++) {
+                int u = reverseSources[e];
+                double candidate = toEnd[v] + reverseCosts[e];
+                if (candidate < toEnd[u]) {
+                    toEnd[u] = candidate;
+                    next[u] = v;
+                    queue.insertOrDecrease(u, candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Восстанавливает кратчайший маршрут по обратному дереву.
+     */
+    private static Candidate treePath(CityGraph graph, int source, int target, double[] toEnd, int[] next) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int v = source; v != -1; v = next[v]) {
+            nodes.add(v);
+            if (v == target) {
+                break;
+            }
+        }
+        int[] path = new int[nodes.size()];
+        double[] prefix = new double[path.length];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = nodes.get(i);
+            prefix[i] = toEnd[source] - toEnd[path[i]];
+        }
+        return new Candidate(path, prefix, 0);
+    }
+
+    /**
+     * Ищет кратчайшее ответвление от города с индексом index предыдущего маршрута:
+     * начало маршрута до этого города сохраняется, его города исключаются из поиска,
+     * а маршруты, по которым уходили уже найденные пути с тем же началом, запрещаются.
+     * Поиск A* с точной эвристикой останавливается на первом извлеченном городе, путь от которого
+     * по обратному дереву не проходит через исключенные города: его оценка минимальна
+     * и достижима, поэтому остаток маршрута берется из дерева без дальнейшего поиска.
+     * Такой остаток не может вернуться в уже пройденный город — иначе существовал бы
+     * более дешевый допустимый маршрут, чем минимальная оценка.
+     * Рабочие массивы берутся из пула запроса и возвращаются в него.
+     * @return новый маршрут или null, если ответвления нет
+     */
+    private static Candidate spur(CityGraph graph, Queue<SpurScratch> pool, List<Candidate> found,
+                                  Candidate previous, int index, int target, double[] toEnd, int[] next) {
+        SpurScratch scratch = pool.poll();
+        if (scratch == null) {
+            scratch = new SpurScratch(graph.cityCount());
+        }
+        try {
+            return spur(graph, scratch, found, previous, index, target, toEnd, next);
+        } finally {
+            pool.offer(scratch);
+        }
+    }
+
+    /**
+     * Поиск ответвления с заданными рабочими массивами.
+     * @return новый маршрут или null, если ответвления нет
+     */
+    private static Candidate spur(CityGraph graph, SpurScratch scratch, List<Candidate> found,
+                                  Candidate previous, int index, int target, double[] toEnd, int[] next) {
+        scratch.reset();
+        SearchScratch s = scratch.search;
+        int spurNode = previous.nodes[index];
+        for (int i = 0; i < index; i++) {
+            scratch.block(previous.nodes[i]);
+        }
+        int[] forbidden = new int[found.size()];
+        int forbiddenCount = 0;
+        for (Candidate path : found) {
+            if (path.nodes.length > index + 1 && path.sharesRoot(previous, index)) {
+                forbidden[forbiddenCount++] = path.nodes[index + 1];
+            }
+        }
+
+        PriorityQueue<Step> queue = scratch.queue;
+        s.set(spurNode, 0.0, -1);
+        queue.add(new Step(spurNode, 0.0, toEnd[spurNode]));
+        while (!queue.isEmpty()) {
+            Step step = queue.poll();
+            int u = step.id;
+            double cost = s.dist(u);
+            if (step.cost > cost) {
+                continue;
+            }
+            if (u != spurNode && scratch.treePathClear(u, spurNode, target, next)) {
+                return join(previous, index, s, u, target, toEnd, next);
+            }
+            for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                int v = graph.routeTarget(e);
+                if (toEnd[v] == Double.POSITIVE_INFINITY || scratch.blocked(v)
+                        || (u == spurNode && contains(forbidden, forbiddenCount, v))) {
+                    continue;
+                }
+                double candidate = cost + graph.routeCost(e);
+                if (candidate < s.dist(v)) {
+                    s.set(v, candidate, u);
+                    queue.add(new Step(v, candidate, candidate + toEnd[v]));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Соединяет начало предыдущего маршрута, найденное ответвление до города meeting
+     * и путь от meeting до конца по обратному дереву.
+     */
+    private static Candidate join(Candidate previous, int index, SearchScratch s, int meeting,
+                                  int target, double[] toEnd, int[] next) {
+        int spurLength = 0;
+        for (int v = meeting; v != -1; v = s.parent(v)) {
+            spurLength++;
+        }
+        int tailLength = 0;
+        for (int v = meeting; v != target; v = next[v]) {
+            tailLength++;
+        }
+        int length = index + spurLength + tailLength;
+        int[] nodes = Arrays.copyOf(previous.nodes, length);
+        double[] prefix = Arrays.copyOf(previous.prefix, length);
+        double rootCost = previous.prefix[index];
+        for (int v = meeting, i = index + spurLength - 1; v != -1; v = s.parent(v), i--) {
+            nodes[i] = v;
+            prefix[i] = rootCost + s.dist(v);
+        }
+        double meetingCost = rootCost + s.dist(meeting);
+        for (int v = next[meeting], i = index + spurLength; i < length; v = next[v], i++) {
+            nodes[i] = v;
+            prefix[i] = meetingCost + toEnd[meeting] - toEnd[v];
+        }
+        return new Candidate(nodes, prefix, index);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Маршрут-кандидат: номера городов, стоимости от начала до каждого из них
+     * и индекс города, в котором маршрут ответвился от предыдущего.
+     * Ответвления раньше этого индекса уже были рассмотрены для предыдущего маршрута
+     * (улучшение Лоулера), поэтому для кандидата они не ищутся повторно.
+     * Кандидаты равны, если совпадают последовательности городов.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final int[] nodes;
+        final double[] prefix;
+        final int deviation;
+        private final int hash;
+
+        Candidate(int[] nodes, double[] prefix, int deviation) {
+            this.nodes = nodes;
+            this.prefix = prefix;
+            this.deviation = deviation;
+            this.hash = Arrays.hashCode(nodes);
+        }
+
+        double cost() {
+            return prefix[prefix.length - 1];
+        }
+
+        boolean sharesRoot(Candidate other, int index) {
+            return Arrays.equals(nodes, 0, index + 1, other.nodes, 0, index + 1);
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byCost = Double.compare(cost(), other.cost());
+            return byCost != 0 ? byCost : Integer.compare(nodes.length, other.nodes.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Candidate && Arrays.equals(nodes, ((Candidate) o).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Элемент очереди поиска ответвления. При равной оценке A* первым извлекается
+     * город, дальше продвинувшийся от начала: с точной эвристикой это сразу ведет
+     * поиск к концу и не раскрывает всех городов с той же оценкой.
+     */
+    private static final class Step implements Comparable<Step> {
+        final int id;
+        final double cost;
+        final double priority;
+
+        Step(int id, double cost, double priority) {
+            this.id = id;
+            this.cost = cost;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Step other) {
+            int byPriority = Double.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Double.compare(other.cost, cost);
+        }
+    }
+
+    /**
+     * Рабочие массивы поиска ответвления: расстояния с отметками поиска
+     * и отметки городов, исключенных из поиска.
+     */
+    private static final class SpurScratch {
+        final SearchScratch search;
+        final PriorityQueue<Step> queue = new PriorityQueue<>();
+        private final int[] blockedStamp;
+        private final int[] treeMark;
+        private int blockedEpoch;
+
+        SpurScratch(int cityCount) {
+            this.search = new SearchScratch(cityCount);
+            this.blockedStamp = new int[cityCount];
+            this.treeMark = new int[cityCount];
+        }
+
+        void reset() {
+            search.reset();
+            queue.clear();
+            blockedEpoch++;
+            if (blockedEpoch == 0) {
+                Arrays.fill(blockedStamp, 0);
+                Arrays.fill(treeMark, 0);
+                blockedEpoch = 1;
+            }
+        }
+
+        void block(int v) {
+            blockedStamp[v] = blockedEpoch;
+        }
+
+        boolean blocked(int v) {
+            return blockedStamp[v] == blockedEpoch;
+        }
+
+        /**
+         * Проверяет, что путь от города до конца по обратному дереву не проходит
+         * через исключенные города и через город ответвления (из него могут вести
+         * запрещенные маршруты). Результат запоминается для всех городов пути,
+         * поэтому за один поиск каждый город дерева проверяется не более одного раза.
+         */
+        boolean treePathClear(int from, int spurNode, int target, int[] next) {
+            int v = from;
+            boolean clear;
+            while (true) {
+                if (v == target || treeMark[v] == blockedEpoch) {
+                    clear = true;
+                    break;
+                }
+                if (treeMark[v] == -blockedEpoch || blocked(v) || v == spurNode || next[v] == -1) {
+                    clear = false;
+                    break;
+                }
+                v = next[v];
+            }
+            int mark = clear ? blockedEpoch : -blockedEpoch;
+            for (int w = from; w != v; w = next[w]) {
+                treeMark[w] = mark;
+            }
+            return clear;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/* Граф городов вне кучи (MemorySegment) для сетей больше размера кучи */
+
+package ru.Beklemysheva.city;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Граф городов, маршруты и названия которого хранятся вне кучи в MemorySegment.
+ * Память имеет ту же структуру, что и файл GraphFile: стоимости, начало маршрутов
+ * каждого города, города назначения и таблица названий в UTF-8. Поэтому файл графа
+ * отображается в память как есть, без чтения в массивы, а сборщик мусора не просматривает
+ * ни маршруты, ни названия: в куче остаются только рабочие массивы поиска SearchScratch
+ * (32 байта на город: стоимость, предыдущий город и отметка поиска — 16 байт,
+ * индексированная куча — еще 16) для каждого одновременно выполняемого запроса.
+ * Рабочие массивы берутся из пула графа (ScratchPool) на время запроса, поэтому
+ * запросы из новых виртуальных потоков не создают их заново.
+ *
+ * Города адресуются номерами от 0 до cityCount() - 1; объекты City создаются только
+ * для городов найденного маршрута. Память освобождается методом close();
+ * после него обращение к графу завершается исключением IllegalStateException.
+ * Запросы из разных потоков допускаются, пока граф не закрыт.
+ */
+public final class OffHeapGraph implements AutoCloseable {
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final Arena arena;
+    private final int cityCount;
+    private final int routeCount;
+    private final MemorySegment costs;
+    private final MemorySegment offsets;
+    private final MemorySegment targets;
+    private final MemorySegment nameOffsets;
+    private final MemorySegment names;
+    private final ScratchPool<SearchScratch> scratch;
+    private volatile MemorySegment nameIndex;
+
+    /**
+     * Создает граф над проверенным образом файла графа.
+     * @param arena область, которой принадлежит память графа
+     * @param image память в формате GraphFile
+     * @param n число городов
+     * @param m число маршрутов
+     */
+    private OffHeapGraph(Arena arena, MemorySegment image, int n, int m) {
+        this.arena = arena;
+        this.cityCount = n;
+        this.routeCount = m;
+        long position = GraphFile.HEADER_SIZE;
+        costs = image.asSlice(position, 8L * m);
+        position += 8L * m;
+        offsets = image.asSlice(position, 4L * (n + 1));
+        position += 4L * (n + 1);
+        targets = image.asSlice(position, 4L * m);
+        position += 4L * m;
+        nameOffsets = image.asSlice(position, 4L * (n + 1));
+        position += 4L * (n + 1);
+        names = image.asSlice(position);
+        scratch = new ScratchPool<>(() -> new SearchScratch(cityCount));
+    }
+
+    /**
+     * Копирует снимок графа в память вне кучи.
+     * @param graph снимок графа
+     * @return граф вне кучи или null, если снимок не задан
+     */
+    public static OffHeapGraph of(CityGraph graph) {
+        if (graph == null) {
+            System.out.println("Ошибка: снимок графа не может быть null.");
+            return null;
+        }
+        int n = graph.cityCount();
+        int m = graph.routeCount();
+        byte[][] nameBytes = new byte[n][];
+        long nameSize = 0;
+        for (int i = 0; i < n; i++) {
+            nameBytes[i] = graph.nameAt(i).getBytes(StandardCharsets.UTF_8);
+            nameSize += nameBytes[i].length;
+        }
+        if (nameSize > Integer.MAX_VALUE) {
+            System.out.println("Ошибка: таблица названий городов слишком велика.");
+            return null;
+        }
+        long size = GraphFile.HEADER_SIZE + 8L * m + 4L * (n + 1) + 4L * m + 4L * (n + 1) + nameSize;
+
+        Arena arena = Arena.ofShared();
+        MemorySegment image = arena.allocate(size, 8);
+        image.set(INT, 0, GraphFile.MAGIC);
+        image.set(INT, 4, GraphFile.VERSION);
+        image.set(INT, 8, n);
+        image.set(INT, 12, m);
+        long position = GraphFile.HEADER_SIZE;
+        for (int e = 0; e < m; e++, position += 8) {
+            image.set(DOUBLE, position, graph.routeCost(e));
+        }
+        for (int i = 0; i <= n; i++, position += 4) {
+            image.set(INT, position, i < n ? graph.firstRoute(i) : m);
+        }
+        for (int e = 0; e < m; e++, position += 4) {
+            image.set(INT, position, graph.routeTarget(e));
+        }
+        int nameOffset = 0;
+        for (int i = 0; i <= n; i++, position += 4) {
+            image.set(INT, position, nameOffset);
+            nameOffset += i < n ? nameBytes[i].length : 0;
+        }
+        for (byte[] name : nameBytes) {
+            MemorySegment.copy(name, 0, image, ValueLayout.JAVA_BYTE, position, name.length);
+            position += name.length;
+        }
+        return new OffHeapGraph(arena, image, n, m);
+    }
+
+    /**
+     * Отображает файл графа, сохраненный GraphFile.write, в память без копирования в кучу.
+     * Перед возвратом файл проверяется так же, как в GraphFile.read: смещения маршрутов
+     * и названий, города назначения и стоимости. Проверка читает отображение один раз
+     * за O(n + m), зато последующие запросы не выходят за границы массивов
+     * и не встречают отрицательных стоимостей.
+     * @param file путь к файлу
+     * @return граф вне кучи или null, если файл не удалось прочитать или он поврежден
+     */
+    public static OffHeapGraph map(java.nio.file.Path file) {
+        if (file == null) {
+            System.out.println("Ошибка: путь к файлу не может быть null.");
+            return null;
+        }
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < GraphFile.HEADER_SIZE) {
+                System.out.println("Ошибка: файл графа поврежден.");
+                arena.close();
+                return null;
+            }
+            MemorySegment image = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            int n = image.get(INT, 8);
+            int m = image.get(INT, 12);
+            if (image.get(INT, 0) != GraphFile.MAGIC || image.get(INT, 4) != GraphFile.VERSION || n < 0 || m < 0) {
+                System.out.println("Ошибка: неизвестный формат файла графа.");
+                arena.close();
+                return null;
+            }
+            long namesStart = GraphFile.HEADER_SIZE + 8L * m + 4L * (n + 1L) + 4L * m + 4L * (n + 1L);
+            if (n == Integer.MAX_VALUE || namesStart > size || size - namesStart > Integer.MAX_VALUE) {
+                System.out.println("Ошибка: файл графа поврежден (размер не соответствует заголовку).");
+                arena.close();
+                return null;
+            }
+            OffHeapGraph graph = new OffHeapGraph(arena, image, n, m);
+            if (!graph.isValid()) {
+                arena.close();
+                return null;
+            }
+            return graph;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ошибка чтения файла графа: " + e.getMessage());
+            arena.close();
+            return null;
+        }
+    }
+
+    /**
+     * Проверяет отображенный файл: смещения начинаются с 0, не убывают и заканчиваются
+     * числом маршрутов и размером таблицы названий, города назначения лежат в [0, n),
+     * стоимости конечны и положительны.
+     * @return true если файл корректен
+     */
+    private boolean isValid() {
+        if (!isMonotonic(offsets, cityCount, routeCount) || !isMonotonic(nameOffsets, cityCount, names.byteSize())) {
+            System.out.println("Ошибка: файл графа поврежден (смещения).");
+            return false;
+        }
+        for (int e = 0; e < routeCount; e++) {
+            int target = routeTarget(e);
+            double cost = routeCost(e);
+            if (target < 0 || target >= cityCount || !(cost > 0) || Double.isInfinite(cost)) {
+                System.out.println("Ошибка: файл графа поврежден (маршрут " + e + ").");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет массив смещений из count + 1 элементов: первый равен 0,
+     * значения не убывают, последний равен last.
+     * @param offsets смещения
+     * @param count количество элементов без последнего
+     * @param last ожидаемое последнее значение
+     * @return true если смещения корректны
+     */
+    private static boolean isMonotonic(MemorySegment offsets, int count, long last) {
+        if (offsets.getAtIndex(INT, 0) != 0 || offsets.getAtIndex(INT, count) != last) {
+            return false;
+        }
+        int previous = 0;
+        for (long i = 1; i <= count; i++) {
+            int value = offsets.getAtIndex(INT, i);
+            if (value < previous) {
+                return false;
+            }
+            previous = value;
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает количество городов.
+     * @return количество городов
+     */
+    public int cityCount() {
+        return cityCount;
+    }
+
+    /**
+     * Возвращает количество маршрутов.
+     * @return количество маршрутов
+     */
+    public int routeCount() {
+        return routeCount;
+    }
+
+    /**
+     * Возвращает название города.
+     * @param id номер города
+     * @return название города
+     */
+    public String nameAt(int id) {
+        int start = nameOffsets.getAtIndex(INT, id);
+        int end = nameOffsets.getAtIndex(INT, id + 1);
+        return new String(names.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Возвращает номер города по названию. При первом вызове строится индекс названий
+     * вне кучи (открытая адресация, 8 байт на город).
+     * @param name название города
+     * @return номер города или -1, если города с таким названием нет
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        MemorySegment index = nameIndex();
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        MemorySegment key = MemorySegment.ofArray(bytes);
+        long mask = index.byteSize() / 4 - 1;
+        for (long slot = hash(key, 0, bytes.length) & mask; ; slot = (slot + 1) & mask) {
+            int stored = index.getAtIndex(INT, slot);
+            if (stored == 0) {
+                return -1;
+            }
+            int id = stored - 1;
+            int start = nameOffsets.getAtIndex(INT, id);
+            int end = nameOffsets.getAtIndex(INT, id + 1);
+            if (end - start == bytes.length
+                    && MemorySegment.mismatch(names, start, end, key, 0, bytes.length) == -1) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество маршрутов из города.
+     * @param id номер города
+     * @return количество маршрутов
+     */
+    public int outDegree(int id) {
+        return firstRoute(id + 1) - firstRoute(id);
+    }
+
+    /**
+     * Возвращает номер первого маршрута города; маршруты города идут подряд.
+     * @param id номер города (cityCount() для конца последнего города)
+     * @return номер маршрута
+     */
+    public int firstRoute(int id) {
+        return offsets.getAtIndex(INT, id);
+    }
+
+    /**
+     * Возвращает номер города назначения маршрута.
+     * @param route номер маршрута
+     * @return номер города назначения
+     */
+    public int routeTarget(int route) {
+        return targets.getAtIndex(INT, route);
+    }
+
+    /**
+     * Возвращает стоимость маршрута.
+     * @param route номер маршрута
+     * @return стоимость
+     */
+    public double routeCost(int route) {
+        return costs.getAtIndex(DOUBLE, route);
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости между городами с указанными названиями.
+     * @param start название города начала
+     * @param end название города конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    public RouteResult shortestPath(String start, String end) {
+        int from = idOf(start);
+        int to = idOf(end);
+        if (from < 0 || to < 0) {
+            return RouteResult.NOT_FOUND;
+        }
+        return shortestPath(from, to);
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости (алгоритм Дейкстры). Города маршрута
+     * создаются заново по названиям, поэтому не совпадают по ссылке с исходными объектами City.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    public RouteResult shortestPath(int from, int to) {
+        if (from < 0 || to < 0 || from >= cityCount || to >= cityCount) {
+            System.out.println("Ошибка: номер города вне графа.");
+            return RouteResult.NOT_FOUND;
+        }
+        SearchScratch s = scratch.borrow();
+        try {
+            return shortestPath(from, to, s);
+        } finally {
+            scratch.release(s);
+        }
+    }
+
+    /**
+     * Поиск Дейкстры с переданными рабочими массивами.
+     * @param from номер города начала
+     * @param to номер города конца
+     * @param s рабочие массивы поиска
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    private RouteResult shortestPath(int from, int to, SearchScratch s) {
+        s.reset();
+        s.set(from, 0.0, -1);
+        s.queue.insertOrDecrease(from, 0.0);
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 1;
+
+        while (!s.queue.isEmpty()) {
+            int current = s.queue.poll();
+            double cost = s.dist(current);
+            settled++;
+            if (current == to) {
+                SearchProbe.record(settled, relaxed, peak);
+                int length = 0;
+                for (int v = to; v != -1; v = s.parent(v)) {
+                    length++;
+                }
+                City[] path = new City[length];
+                for (int v = to; v != -1; v = s.parent(v)) {
+                    path[--length] = new City(nameAt(v));
+                }
+                return new RouteResult(path, cost);
+            }
+            int first = firstRoute(current);
+            int last = firstRoute(current + 1);
+            relaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int neighbor = routeTarget(e);
+                double candidate = cost + routeCost(e);
+                if (candidate < s.dist(neighbor)) {
+                    s.set(neighbor, candidate, current);
+                    s.queue.insertOrDecrease(neighbor, candidate);
+                }
+            }
+            peak = Math.max(peak, s.queue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        return RouteResult.NOT_FOUND;
+    }
+
+    /**
+     * Освобождает память графа (для отображенного файла — снимает отображение).
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Возвращает индекс названий, строя его при первом обращении.
+     * @return таблица с открытой адресацией: номер города плюс один или 0 для пустой ячейки
+     */
+    private MemorySegment nameIndex() {
+        MemorySegment index = nameIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (nameIndex == null) {
+                long capacity = Long.highestOneBit(Math.max(2L, 2L * cityCount) - 1) << 1;
+                MemorySegment table = arena.allocate(4 * capacity, 4);
+                table.fill((byte) 0);
+                long mask = capacity - 1;
+                for (int id = 0; id < cityCount; id++) {
+                    int start = nameOffsets.getAtIndex(INT, id);
+                    int end = nameOffsets.getAtIndex(INT, id + 1);
+                    long slot = hash(names, start, end) & mask;
+                    while (table.getAtIndex(INT, slot) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table.setAtIndex(INT, slot, id + 1);
+                }
+                nameIndex = table;
+            }
+            return nameIndex;
+        }
+    }
+
+    /**
+     * Хеш FNV-1a байтов названия.
+     * @return хеш
+     */
+    private static long hash(MemorySegment bytes, long start, long end) {
+        long hash = 0xcbf29ce484222325L;
+        for (long i = start; i < end; i++) {
+            hash = (hash ^ (bytes.get(ValueLayout.JAVA_BYTE, i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 32);
+    }
+}
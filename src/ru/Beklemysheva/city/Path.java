@@ -12,17 +12,41 @@
 
 package ru.Beklemysheva.city;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Класс, представляющий маршрут между двумя городами.
  * Позволяет находить путь между городами и представлять его в виде строки.
+ * Города найденного маршрута можно обойти (iterator, stream) без копирования массива.
  */
-public class Path {
+public class Path implements Iterable<City> {
+    /**
+     * Алгоритм поиска маршрута по объектам City.
+     */
+    public enum Algorithm {
+        /** Алгоритм Дейкстры. */
+        DIJKSTRA,
+        /** A* с эвристикой по координатам городов. */
+        A_STAR,
+        /** Двунаправленный алгоритм Дейкстры (от начала и от конца одновременно). */
+        BIDIRECTIONAL
+    }
+
     private City start;
     private City end;
+    private CityGraph graph;
+    private ContractionHierarchy hierarchy;
+    private ReachabilityIndex reachability;
+    private Algorithm algorithm = Algorithm.DIJKSTRA;
+    private double heuristicScale = Double.NaN;
 
     /**
      * Создает новый маршрут между двумя городами.
@@ -66,47 +90,290 @@ public class Path {
     }
 
     /**
-     * Возвращает массив городов, представляющих маршрут.
+     * Устанавливает снимок графа, по которому выполняется поиск маршрута.
+     * Если снимок не задан, поиск идет непосредственно по объектам City.
+     *
+     * @param graph снимок графа или null для поиска по объектам City
+     */
+    public void setGraph(CityGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Возвращает снимок графа, по которому выполняется поиск маршрута.
+     *
+     * @return снимок графа или null, если поиск идет по объектам City
+     */
+    public CityGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Устанавливает иерархию сжатия, по которой выполняется поиск маршрута.
+     * Иерархия имеет приоритет над снимком графа и выбранным алгоритмом.
+     *
+     * @param hierarchy иерархия сжатия или null, чтобы отключить этот режим
+     */
+    public void setHierarchy(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Возвращает иерархию сжатия, по которой выполняется поиск маршрута.
+     *
+     * @return иерархия сжатия или null
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Устанавливает индекс достижимости. Если индекс показывает, что пути нет,
+     * поиск маршрута не выполняется.
+     *
+     * @param reachability индекс достижимости или null, чтобы отключить проверку
+     */
+    public void setReachabilityIndex(ReachabilityIndex reachability) {
+        this.reachability = reachability;
+    }
+
+    /**
+     * Возвращает индекс достижимости, который проверяется перед поиском маршрута.
+     *
+     * @return индекс достижимости или null
+     */
+    public ReachabilityIndex getReachabilityIndex() {
+        return reachability;
+    }
+
+    /**
+     * Устанавливает алгоритм поиска маршрута по объектам City.
+     * Все алгоритмы находят маршрут одинаковой минимальной стоимости.
+     *
+     * @param algorithm алгоритм поиска (не null)
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        if (algorithm == null) {
+            System.out.println("Ошибка: алгоритм поиска не может быть null.");
+            return;
+        }
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Возвращает алгоритм поиска маршрута по объектам City.
+     *
+     * @return алгоритм поиска
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Возвращает массив городов, представляющих маршрут минимальной стоимости.
      * Если путь не найден, возвращает пустой массив.
      *
      * @return массив городов в порядке прохождения
      */
     public City[] getRoute() {
+        return getResult().getCities();
+    }
+
+    /**
+     * Возвращает суммарную стоимость маршрута минимальной стоимости.
+     * Стоимость берется из кэша RouteCache, если там есть маршрут или стоимость этой пары.
+     * Иначе выполняется поиск только стоимости: предыдущие города не запоминаются,
+     * маршрут не восстанавливается, а короткие ребра иерархии не разворачиваются.
+     * Найденная стоимость сохраняется в кэше и учитывается в RouteSearchStats.
+     * Для двунаправленного алгоритма отдельного поиска стоимости нет, поэтому выполняется
+     * обычный двунаправленный поиск, а в кэше сохраняется только его стоимость.
+     * A* с заданным множителем эвристики кэш не использует (см. setHeuristicScale).
+     *
+     * @return стоимость маршрута или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    public double getCost() {
         if (start.equals(end)) {
-            return new City[]{start};
+            return 0.0;
+        }
+        City from = start;
+        City to = end;
+        ReachabilityIndex index = reachability;
+        if (index != null && !index.mayReach(from, to)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        ContractionHierarchy ch = hierarchy;
+        if (ch != null) {
+            return RouteCache.getCost(from, to, ch,
+                    () -> RouteSearchStats.measureCost(from, to, "CH", () -> ch.shortestCost(from, to)));
+        }
+        CityGraph snapshot = graph;
+        Algorithm mode = algorithm;
+        String label = snapshot != null ? "CSR" : mode.name();
+        if (snapshot == null && bypassesCache(mode)) {
+            return RouteSearchStats.measureCost(from, to, label, () -> searchCost(from, to, null, mode));
         }
+        return RouteCache.getCost(from, to, snapshot,
+                () -> RouteSearchStats.measureCost(from, to, label, () -> searchCost(from, to, snapshot, mode)));
+    }
 
-        List<City> path = findPath(start, end, new ArrayList<>());
-        return path.toArray(new City[0]);
+    /**
+     * Выполняет поиск маршрута минимальной стоимости выбранным алгоритмом.
+     * Результаты сохраняются в общем кэше RouteCache, поэтому повторные запросы
+     * и вызовы toString() не выполняют поиск заново, пока граф не изменится;
+     * исключение — A* с заданным множителем эвристики (см. setHeuristicScale).
+     * Если задан индекс достижимости и он исключает путь, поиск не выполняется.
+     * Выполненные поиски учитываются в RouteSearchStats и событиях JFR, если они включены.
+     *
+     * @return маршрут и его стоимость
+     */
+    public RouteResult getResult() {
+        if (start.equals(end)) {
+            return new RouteResult(new City[]{start}, 0.0);
+        }
+        City from = start;
+        City to = end;
+        ReachabilityIndex index = reachability;
+        if (index != null && !index.mayReach(from, to)) {
+            return RouteResult.NOT_FOUND;
+        }
+        ContractionHierarchy ch = hierarchy;
+        if (ch != null) {
+            return RouteCache.get(from, to, ch,
+                    () -> RouteSearchStats.measure(from, to, "CH", () -> ch.shortestPath(from, to)));
+        }
+        CityGraph snapshot = graph;
+        Algorithm mode = algorithm;
+        String label = snapshot != null ? "CSR" : mode.name();
+        if (snapshot == null && bypassesCache(mode)) {
+            return RouteSearchStats.measure(from, to, label, () -> search(from, to, null, mode));
+        }
+        return RouteCache.get(from, to, snapshot,
+                () -> RouteSearchStats.measure(from, to, label, () -> search(from, to, snapshot, mode)));
     }
 
     /**
-     * Рекурсивный поиск пути (DFS).
+     * Возвращает до k маршрутов без повторяющихся городов в порядке возрастания стоимости
+     * (алгоритм Йена). Поиск идет по заданному снимку графа, по снимку иерархии сжатия
+     * или, если ни то ни другое не задано, по снимку городов, достижимых из города начала.
      *
-     * @param current текущий город
-     * @param target город назначения
-     * @param visited список посещенных городов
-     * @return список городов пути или пустой список, если путь не найден
+     * @param k максимальное количество маршрутов (больше 0)
+     * @return маршруты и их стоимости; пустой список, если путь не найден
      */
-    private List<City> findPath(City current, City target, List<City> visited) {
-        visited.add(current);
+    public List<RouteResult> getRoutes(int k) {
+        if (k <= 0) {
+            System.out.println("Ошибка: количество маршрутов должно быть положительным.");
+            return Collections.emptyList();
+        }
+        if (start.equals(end)) {
+            return Collections.singletonList(new RouteResult(new City[]{start}, 0.0));
+        }
+        if (reachability != null && !reachability.mayReach(start, end)) {
+            return Collections.emptyList();
+        }
+        CityGraph snapshot = graph;
+        if (snapshot == null && hierarchy != null) {
+            snapshot = hierarchy.getGraph();
+        }
+        if (snapshot == null) {
+            snapshot = CityGraph.of(Collections.singletonList(start));
+        }
+        return KShortestPaths.find(snapshot, start, end, k);
+    }
 
-        if (current.equals(target)) {
-            return new ArrayList<>(Collections.singletonList(current));
+    /**
+     * Выполняет поиск маршрута без обращения к кэшу.
+     *
+     * @param from город начала
+     * @param to город конца
+     * @param snapshot снимок графа или null
+     * @param mode алгоритм поиска по объектам City
+     * @return результат поиска
+     */
+    private RouteResult search(City from, City to, CityGraph snapshot, Algorithm mode) {
+        if (snapshot != null) {
+            return snapshot.shortestPath(from, to);
         }
+        switch (mode) {
+            case A_STAR:
+                return RouteSearch.aStar(from, to, scale());
+            case BIDIRECTIONAL:
+                return RouteSearch.bidirectional(from, to);
+            default:
+                return RouteSearch.dijkstra(from, to);
+        }
+    }
 
-        for (Route route : current.getRoutes()) {
-            City neighbor = route.getDestination();
-            if (!visited.contains(neighbor)) {
-                List<City> path = findPath(neighbor, target, new ArrayList<>(visited));
-                if (!path.isEmpty()) {
-                    path.add(0, current);
-                    return path;
-                }
-            }
+    /**
+     * Выполняет поиск только стоимости без обращения к кэшу.
+     *
+     * @param from город начала
+     * @param to город конца
+     * @param snapshot снимок графа или null
+     * @param mode алгоритм поиска по объектам City
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    private double searchCost(City from, City to, CityGraph snapshot, Algorithm mode) {
+        if (snapshot != null) {
+            return snapshot.shortestCost(from, to);
+        }
+        switch (mode) {
+            case A_STAR:
+                return RouteSearch.cost(from, to, scale());
+            case BIDIRECTIONAL:
+                return RouteSearch.bidirectional(from, to).getCost();
+            default:
+                return RouteSearch.cost(from, to, 0.0);
         }
+    }
 
-        return Collections.emptyList();
+    /**
+     * Задает множитель эвристики A*: нижнюю границу стоимости маршрута на единицу
+     * евклидова расстояния между его городами (например, стоимость при максимальной
+     * скорости). Заниженная граница только замедляет поиск, а завышенная может дать
+     * маршрут не минимальной стоимости, поэтому результаты поиска с заданным множителем
+     * не попадают в общий кэш RouteCache и не берутся из него. Значение Double.NaN
+     * возвращает автоматический режим: используется граница City.heuristicScale,
+     * общая для всех маршрутов и поддерживаемая при добавлении маршрутов.
+     *
+     * @param scale множитель эвристики (не меньше 0) или Double.NaN
+     */
+    public void setHeuristicScale(double scale) {
+        if (!Double.isNaN(scale) && (scale < 0 || Double.isInfinite(scale))) {
+            System.out.println("Ошибка: множитель эвристики должен быть конечным и неотрицательным.");
+            return;
+        }
+        this.heuristicScale = scale;
+    }
+
+    /**
+     * Возвращает заданный множитель эвристики A*.
+     *
+     * @return множитель эвристики или Double.NaN в автоматическом режиме
+     */
+    public double getHeuristicScale() {
+        return heuristicScale;
+    }
+
+    /**
+     * Проверяет, что поиск выполняется A* с заданным множителем эвристики: такой результат
+     * может отличаться от результата других алгоритмов, поэтому общий кэш не используется.
+     *
+     * @param mode алгоритм поиска по объектам City
+     * @return true если кэш нужно обойти
+     */
+    private boolean bypassesCache(Algorithm mode) {
+        return mode == Algorithm.A_STAR && !Double.isNaN(heuristicScale);
+    }
+
+    /**
+     * Возвращает множитель эвристики A*: заданный через setHeuristicScale
+     * или общую границу City.heuristicScale.
+     *
+     * @return множитель эвристики
+     */
+    private double scale() {
+        double scale = heuristicScale;
+        return Double.isNaN(scale) ? City.heuristicScale() : scale;
     }
 
     /**
@@ -125,6 +392,79 @@ public class Path {
         return end;
     }
 
+    /**
+     * Возвращает обход городов маршрута от начала к концу.
+     * Маршрут находится так же, как в getResult(): выбранным алгоритмом, через кэш
+     * и с учетом в статистике, поэтому iterator, stream, writeTo и getRoute выдают
+     * один и тот же маршрут, пока граф не изменится. Поиск выполняется полностью
+     * при вызове метода; ленивым является только обход: в отличие от getRoute,
+     * массив маршрута не копируется.
+     *
+     * @return города маршрута в порядке прохождения (пусто, если путь не найден)
+     */
+    @Override
+    public Iterator<City> iterator() {
+        RouteResult result = getResult();
+        return new Iterator<City>() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < result.length();
+            }
+
+            @Override
+            public City next() {
+                if (position >= result.length()) {
+                    throw new NoSuchElementException();
+                }
+                return result.cityAt(position++);
+            }
+        };
+    }
+
+    /**
+     * Возвращает города маршрута в виде последовательного потока.
+     * Поиск (см. iterator) откладывается до запуска терминальной операции потока.
+     *
+     * @return поток городов в порядке прохождения
+     */
+    public Stream<City> stream() {
+        return StreamSupport.stream(() -> Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), Spliterator.ORDERED | Spliterator.NONNULL, false);
+    }
+
+    /**
+     * Записывает названия городов маршрута через " -> " прямо в out,
+     * без промежуточных строк и массивов.
+     *
+     * @param out получатель текста
+     * @return true если маршрут записан
+     */
+    public boolean writeTo(Appendable out) {
+        if (out == null) {
+            System.out.println("Ошибка: получатель текста не может быть null.");
+            return false;
+        }
+        try {
+            RouteResult result = getResult();
+            if (!result.isFound()) {
+                out.append("Путь не найден");
+                return true;
+            }
+            for (int i = 0; i < result.length(); i++) {
+                if (i > 0) {
+                    out.append(" -> ");
+                }
+                out.append(result.cityAt(i).getName());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ошибка записи маршрута: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Возвращает строковое представление маршрута.
      *
@@ -132,16 +472,8 @@ public class Path {
      */
     @Override
     public String toString() {
-        City[] route = getRoute();
-        if (route.length == 0) {
-            return "Путь не найден";
-        }
-
         StringBuilder sb = new StringBuilder();
-        for (City city : route) {
-            sb.append(city.getName()).append(" -> ");
-        }
-        sb.setLength(sb.length() - 4);
+        writeTo(sb);
         return sb.toString();
     }
 }
@@ -0,0 +1,749 @@
+/* Индекс достижимости городов: компоненты связности и граф компонент */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Индекс, который без поиска маршрута отвечает, что путь между городами не существует.
+ * Для снимка графа вычисляются компоненты слабой связности, компоненты сильной связности
+ * (алгоритм Тарьяна) и метки интервалов на графе компонент (GRAIL).
+ * Номера компонент сильной связности идут в обратном топологическом порядке,
+ * поэтому путь из компоненты a в компоненту b возможен только при a >= b.
+ *
+ * Проверка mayReach выполняется за O(1) и отсекает большинство недостижимых пар:
+ * разные компоненты слабой связности, неподходящий топологический порядок или интервалы.
+ * Точная проверка isReachable обходит только граф компонент с теми же отсечениями.
+ *
+ * Индекс, построенный по объектам City, подписан на изменения маршрутов до вызова close()
+ * через WeakRouteListener: незакрытый индекс, на который больше нет ссылок, собирается
+ * сборщиком мусора. Уведомление обрабатывается в потоке, изменившем маршрут, без обхода
+ * графа — за O(число маршрутов города), — а индекс обновляется без перестройки там,
+ * где это возможно:
+ * - маршруты, у которых оба города не входят в снимок, не влияют на пути между городами
+ *   снимка (все города, достижимые из снимка, в него входят) и пропускаются; маршрут
+ *   из чужого города в город снимка пропускается по той же причине;
+ * - добавленный маршрут внутри одной компоненты сильной связности ничего не меняет,
+ *   остальные добавленные маршруты между городами снимка запоминаются и учитываются
+ *   при проверках поверх снимка; лишние из них отбрасываются при перестройке;
+ * - маршрут из города снимка в новый город запоминается как выход из снимка: из городов,
+ *   которые могут дойти до него, путь считается возможным в любой город до перестройки;
+ * - удаление маршрута, которого нет ни в снимке, ни среди запомненных, ничего не меняет;
+ *   остальные удаления только уменьшают достижимость, поэтому ответ «пути нет» остается
+ *   верным, а точная проверка до перестройки идет по текущим маршрутам городов.
+ * Снимок перестраивается в фоне, если были удаления маршрутов снимка, выходы из снимка
+ * или слишком много добавленных маршрутов. Перестройка начинается с задержкой
+ * REBUILD_DELAY_MS, чтобы серия изменений приводила к одной перестройке; запросы
+ * ее не ждут. Изменения, пришедшие во время перестройки, запоминаются (не больше MAX_LOG);
+ * при переполнении новый снимок сразу считается устаревшим и перестраивается еще раз.
+ * Индекс по готовому снимку CityGraph не меняется.
+ */
+public final class ReachabilityIndex implements AutoCloseable {
+    private static final int MAX_EXTRA_ROUTES = 64;
+    private static final int MAX_LOG = 1024;
+    private static final long REBUILD_DELAY_MS = 50;
+
+    private final List<City> roots;
+    private final Object lock = new Object();
+    private final List<Event> log = new ArrayList<>();
+    private volatile View view;
+    private long epoch;
+    private boolean rebuilding;
+    private boolean overflow;
+    private boolean closed;
+
+    private final RouteListener listener = new RouteListener() {
+        @Override
+        public void routeAdded(City source, Route route) {
+            onChange(source, route.getDestination(), true);
+        }
+
+        @Override
+        public void routeRemoved(City source, Route route) {
+            onChange(source, route.getDestination(), false);
+        }
+    };
+    private final WeakRouteListener subscription = new WeakRouteListener(listener);
+
+    /**
+     * Создает индекс.
+     * @param roots исходные города (null для неизменяемого снимка)
+     * @param view начальное состояние или null, если оно будет построено позже
+     */
+    private ReachabilityIndex(List<City> roots, View view) {
+        this.roots = roots;
+        this.view = view;
+    }
+
+    /**
+     * Строит индекс по городам и всем городам, достижимым из них,
+     * и подписывает его на изменения маршрутов.
+     * @param cities исходные города
+     * @return индекс достижимости
+     */
+    public static ReachabilityIndex of(Collection<City> cities) {
+        if (cities == null) {
+            System.out.println("Ошибка: список городов не может быть null.");
+            cities = new ArrayList<>();
+        }
+        ReachabilityIndex index = new ReachabilityIndex(new ArrayList<>(cities), null);
+        synchronized (index.lock) {
+            index.rebuilding = true;
+        }
+        index.subscription.subscribe();
+        index.rebuild();
+        return index;
+    }
+
+    /**
+     * Строит индекс по неизменяемому снимку графа.
+     * @param graph снимок графа
+     * @return индекс достижимости
+     */
+    public static ReachabilityIndex of(CityGraph graph) {
+        if (graph == null) {
+            System.out.println("Ошибка: снимок графа не может быть null.");
+            return of(new ArrayList<>());
+        }
+        return new ReachabilityIndex(null, new View(new State(graph)));
+    }
+
+    /**
+     * Быстрая проверка. Значение false означает, что пути точно нет;
+     * значение true означает, что путь возможен. Для городов вне индекса возвращается true.
+     * @param from город начала
+     * @param to город конца
+     * @return false если путь из from в to гарантированно не существует
+     */
+    public boolean mayReach(City from, City to) {
+        return view.mayReach(from, to);
+    }
+
+    /**
+     * Точная проверка существования пути. Пока после построения снимка маршруты
+     * только добавлялись между его городами, обходит граф компонент сильной связности
+     * и запомненные маршруты с отсечениями mayReach, не заходя в отдельные города.
+     * Если маршруты удалялись, из снимка появились выходы или города не входят в индекс,
+     * после отсечения mayReach выполняется обход текущих маршрутов городов.
+     * @param from город начала
+     * @param to город конца
+     * @return true если путь из from в to существует
+     */
+    public boolean isReachable(City from, City to) {
+        if (from == null || to == null) {
+            return false;
+        }
+        if (from == to) {
+            return true;
+        }
+        View v = view;
+        int a = v.state.graph.idOf(from);
+        int b = v.state.graph.idOf(to);
+        if (a >= 0 && b >= 0 && v.isClosed()) {
+            return v.reaches(a, b, true);
+        }
+        return v.mayReach(from, to) && search(from, to);
+    }
+
+    /**
+     * Проверяет, что города взаимно достижимы (лежат в одной компоненте сильной связности).
+     * @param a первый город
+     * @param b второй город
+     * @return true если существуют пути в обе стороны
+     */
+    public boolean isStronglyConnected(City a, City b) {
+        View v = view;
+        int x = v.state.graph.idOf(a);
+        int y = v.state.graph.idOf(b);
+        if (x >= 0 && y >= 0 && v.isExact()) {
+            return v.state.component[x] == v.state.component[y];
+        }
+        return isReachable(a, b) && isReachable(b, a);
+    }
+
+    /**
+     * Возвращает количество компонент сильной связности последнего построенного снимка.
+     * После изменений маршрутов значение обновляется, когда завершится фоновая перестройка.
+     * @return количество компонент
+     */
+    public int componentCount() {
+        return view.state.componentCount;
+    }
+
+    /**
+     * Отписывает индекс от изменений маршрутов. После этого индекс больше не обновляется.
+     */
+    @Override
+    public void close() {
+        subscription.unsubscribe();
+        synchronized (lock) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Учитывает изменение маршрута. Во время перестройки событие также запоминается,
+     * чтобы применить его к новому снимку, если снимок мог его не увидеть.
+     * Выполняется в потоке, изменившем маршрут, поэтому не обходит граф.
+     * @param source город отправления
+     * @param destination город назначения
+     * @param added true для добавления, false для удаления
+     */
+    private void onChange(City source, City destination, boolean added) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            epoch++;
+            if (rebuilding && !overflow) {
+                if (log.size() == MAX_LOG) {
+                    overflow = true;
+                    log.clear();
+                } else {
+                    log.add(new Event(epoch, source, destination, added));
+                }
+            }
+            View v = view;
+            if (v == null) {
+                return;
+            }
+            view = v.apply(source, destination, added);
+            if (view.isStale()) {
+                scheduleRebuild();
+            }
+        }
+    }
+
+    /**
+     * Запускает перестройку снимка в фоне с задержкой, если она еще не запланирована.
+     * Вызывается под блокировкой lock.
+     */
+    private void scheduleRebuild() {
+        if (rebuilding || closed) {
+            return;
+        }
+        rebuilding = true;
+        CompletableFuture.runAsync(this::rebuild,
+                CompletableFuture.delayedExecutor(REBUILD_DELAY_MS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Строит новый снимок по текущим маршрутам и применяет к нему изменения,
+     * произошедшие после начала построения. Если изменений было больше MAX_LOG,
+     * новый снимок помечается устаревшим и перестраивается еще раз.
+     */
+    private void rebuild() {
+        long start;
+        synchronized (lock) {
+            if (closed) {
+                rebuilding = false;
+                return;
+            }
+            start = epoch;
+            log.clear();
+            overflow = false;
+        }
+        View fresh = null;
+        try {
+            fresh = new View(new State(CityGraph.of(roots)));
+        } finally {
+            synchronized (lock) {
+                if (fresh != null) {
+                    if (overflow) {
+                        fresh = fresh.stale();
+                    } else {
+                        for (Event event : log) {
+                            if (event.epoch > start) {
+                                fresh = fresh.apply(event.source, event.destination, event.added);
+                            }
+                        }
+                    }
+                    view = fresh;
+                } else if (view == null) {
+                    view = new View(new State(CityGraph.of(Collections.emptyList())));
+                }
+                log.clear();
+                overflow = false;
+                rebuilding = false;
+                if (view.isStale()) {
+                    scheduleRebuild();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ищет путь обходом текущих маршрутов городов.
+     * @param from город начала
+     * @param to город конца
+     * @return true если путь существует
+     */
+    private static boolean search(City from, City to) {
+        Set<City> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<City> pending = new ArrayDeque<>();
+        visited.add(from);
+        pending.add(from);
+        while (!pending.isEmpty()) {
+            for (Route route : pending.poll().routeArray()) {
+                City next = route.getDestination();
+                if (next == to) {
+                    return true;
+                }
+                if (visited.add(next)) {
+                    pending.add(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Изменение маршрута, полученное во время перестройки снимка.
+     */
+    private static final class Event {
+        final long epoch;
+        final City source;
+        final City destination;
+        final boolean added;
+
+        Event(long epoch, City source, City destination, boolean added) {
+            this.epoch = epoch;
+            this.source = source;
+            this.destination = destination;
+            this.added = added;
+        }
+    }
+
+    /**
+     * Неизменяемое состояние для запросов: снимок и изменения маршрутов после него.
+     * Добавленные маршруты, которых нет в снимке, хранятся парами номеров городов снимка;
+     * маршрут из города снимка в город вне его хранится с номером назначения OUTSIDE.
+     */
+    private static final class View {
+        static final int OUTSIDE = -1;
+
+        final State state;
+        final int[] extraFrom;
+        final int[] extraTo;
+        final boolean inexact;
+        final boolean incomplete;
+        final boolean escapes;
+
+        View(State state) {
+            this(state, new int[0], new int[0], false, false, false);
+        }
+
+        private View(State state, int[] extraFrom, int[] extraTo,
+                     boolean inexact, boolean incomplete, boolean escapes) {
+            this.state = state;
+            this.extraFrom = extraFrom;
+            this.extraTo = extraTo;
+            this.inexact = inexact;
+            this.incomplete = incomplete;
+            this.escapes = escapes;
+        }
+
+        /**
+         * Снимок точно описывает граф: изменений после построения не было.
+         */
+        boolean isExact() {
+            return isClosed() && extraFrom.length == 0;
+        }
+
+        /**
+         * Снимок вместе с запомненными маршрутами точно описывает пути между его городами.
+         */
+        boolean isClosed() {
+            return !inexact && !incomplete && !escapes;
+        }
+
+        /**
+         * Снимок нужно перестроить.
+         */
+        boolean isStale() {
+            return inexact || incomplete || escapes;
+        }
+
+        /**
+         * Возвращает то же состояние, помеченное устаревшим: mayReach до перестройки
+         * отвечает true, а isReachable обходит текущие маршруты.
+         */
+        View stale() {
+            return new View(state, extraFrom, extraTo, true, true, escapes);
+        }
+
+        /**
+         * Возвращает состояние после изменения маршрута. Не обходит граф.
+         */
+        View apply(City source, City destination, boolean added) {
+            int a = state.graph.idOf(source);
+            int b = state.graph.idOf(destination);
+            if (a < 0) {
+                return this;
+            }
+            if (!added) {
+                return remove(a, b);
+            }
+            if (incomplete
+                    || (b >= 0 && (state.component[a] == state.component[b] || state.hasRoute(a, b)))) {
+                return this;
+            }
+            if (extraFrom.length == MAX_EXTRA_ROUTES) {
+                return new View(state, extraFrom, extraTo, inexact, true, escapes);
+            }
+            int[] from = Arrays.copyOf(extraFrom, extraFrom.length + 1);
+            int[] to = Arrays.copyOf(extraTo, extraTo.length + 1);
+            from[extraFrom.length] = a;
+            to[extraTo.length] = b >= 0 ? b : OUTSIDE;
+            return new View(state, from, to, inexact, incomplete, escapes || b < 0);
+        }
+
+        /**
+         * Учитывает удаление маршрута из города снимка a. Удаление запомненного маршрута
+         * между городами снимка убирает его из списка; удаление маршрута снимка делает
+         * снимок неточным. Выход из снимка остается в списке до перестройки: лишний маршрут
+         * только ослабляет отсечение mayReach.
+         */
+        private View remove(int a, int b) {
+            if (b < 0) {
+                return this;
+            }
+            for (int i = 0; i < extraFrom.length; i++) {
+                if (extraFrom[i] == a && extraTo[i] == b) {
+                    int[] from = new int[extraFrom.length - 1];
+                    int[] to = new int[extraTo.length - 1];
+                    System.arraycopy(extraFrom, 0, from, 0, i);
+                    System.arraycopy(extraFrom, i + 1, from, i, from.length - i);
+                    System.arraycopy(extraTo, 0, to, 0, i);
+                    System.arraycopy(extraTo, i + 1, to, i, to.length - i);
+                    return new View(state, from, to, inexact, incomplete, escapes);
+                }
+            }
+            if (inexact || !state.hasRoute(a, b)) {
+                return this;
+            }
+            return new View(state, extraFrom, extraTo, true, incomplete, escapes);
+        }
+
+        /**
+         * Быстрая проверка по снимку и добавленным маршрутам.
+         */
+        boolean mayReach(City from, City to) {
+            if (incomplete) {
+                return true;
+            }
+            int a = state.graph.idOf(from);
+            int b = state.graph.idOf(to);
+            return a < 0 || b < 0 || reaches(a, b, false);
+        }
+
+        /**
+         * Проверяет путь по снимку и по цепочке добавленных маршрутов, между которыми путь
+         * есть в снимке. При exact = false между маршрутами используется быстрая проверка
+         * снимка, а достижимый выход из снимка означает, что путь возможен; при exact = true
+         * используется точная проверка, и выходов быть не должно.
+         */
+        boolean reaches(int a, int b, boolean exact) {
+            if (exact ? state.isReachable(a, b) : state.mayReach(a, b)) {
+                return true;
+            }
+            int k = extraFrom.length;
+            if (k == 0) {
+                return false;
+            }
+            boolean[] used = new boolean[k];
+            int[] queue = new int[k];
+            int size = 0;
+            for (int i = 0; i < k; i++) {
+                if (exact ? state.isReachable(a, extraFrom[i]) : state.mayReach(a, extraFrom[i])) {
+                    used[i] = true;
+                    queue[size++] = i;
+                }
+            }
+            for (int head = 0; head < size; head++) {
+                int reached = extraTo[queue[head]];
+                if (reached == OUTSIDE) {
+                    return true;
+                }
+                if (exact ? state.isReachable(reached, b) : state.mayReach(reached, b)) {
+                    return true;
+                }
+                for (int i = 0; i < k; i++) {
+                    if (!used[i] && (exact ? state.isReachable(reached, extraFrom[i])
+                            : state.mayReach(reached, extraFrom[i]))) {
+                        used[i] = true;
+                        queue[size++] = i;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Вычисленные компоненты одного снимка графа.
+     */
+    private static final class State {
+        final CityGraph graph;
+        final int[] weak;
+        final int[] component;
+        final int componentCount;
+        final int[] dagOffsets;
+        final int[] dagTargets;
+        final int[] post;
+        final int[] low;
+
+        State(CityGraph graph) {
+            this.graph = graph;
+            int n = graph.cityCount();
+            this.weak = weakComponents(graph);
+            this.component = new int[n];
+            this.componentCount = strongComponents(graph, component);
+
+            int c = componentCount;
+            int[] counts = new int[c + 1];
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                    if (component[u] != component[graph.routeTarget(e)]) {
+                        counts[component[u] + 1]++;
+                    }
+                }
+            }
+            for (int i = 0; i < c; i++) {
+                counts[i + 1] += counts[i];
+            }
+            this.dagOffsets = counts;
+            this.dagTargets = new int[counts[c]];
+            int[] fill = Arrays.copyOf(counts, c);
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                    int cu = component[u];
+                    int cv = component[graph.routeTarget(e)];
+                    if (cu != cv) {
+                        dagTargets[fill[cu]++] = cv;
+                    }
+                }
+            }
+            this.post = new int[c];
+            this.low = new int[c];
+            labelIntervals();
+        }
+
+        /**
+         * Проверяет, есть ли в снимке маршрут из a в b.
+         */
+        boolean hasRoute(int a, int b) {
+            for (int e = graph.firstRoute(a), last = graph.firstRoute(a + 1); e < last; e++) {
+                if (graph.routeTarget(e) == b) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Быстрая проверка: false означает, что пути точно нет.
+         */
+        boolean mayReach(int a, int b) {
+            if (weak[a] != weak[b]) {
+                return false;
+            }
+            int ca = component[a];
+            int cb = component[b];
+            return ca == cb || (ca > cb && low[ca] <= low[cb] && post[cb] <= post[ca]);
+        }
+
+        /**
+         * Точная проверка обходом графа компонент.
+         */
+        boolean isReachable(int a, int b) {
+            if (!mayReach(a, b)) {
+                return false;
+            }
+            int ca = component[a];
+            int cb = component[b];
+            if (ca == cb) {
+                return true;
+            }
+            BitSet visited = new BitSet(componentCount);
+            int[] stack = new int[16];
+            int size = 0;
+            stack[size++] = ca;
+            visited.set(ca);
+            while (size > 0) {
+                int c = stack[--size];
+                for (int e = dagOffsets[c]; e < dagOffsets[c + 1]; e++) {
+                    int d = dagTargets[e];
+                    if (d == cb) {
+                        return true;
+                    }
+                    if (d > cb && !visited.get(d) && low[d] <= low[cb] && post[cb] <= post[d]) {
+                        visited.set(d);
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = d;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Вычисляет метки интервалов GRAIL: номер в обратном порядке обхода в глубину
+         * и минимальный такой номер среди достижимых компонент. Если b достижима из a,
+         * то интервал [low[b], post[b]] вложен в [low[a], post[a]].
+         */
+        private void labelIntervals() {
+            int c = componentCount;
+            boolean[] hasIncoming = new boolean[c];
+            for (int target : dagTargets) {
+                hasIncoming[target] = true;
+            }
+            boolean[] visited = new boolean[c];
+            int[] stack = new int[c];
+            int[] edge = new int[c];
+            int counter = 0;
+            for (int root = c - 1; root >= 0; root--) {
+                if (hasIncoming[root] || visited[root]) {
+                    continue;
+                }
+                int size = 0;
+                stack[size] = root;
+                edge[size++] = dagOffsets[root];
+                visited[root] = true;
+                low[root] = Integer.MAX_VALUE;
+                while (size > 0) {
+                    int v = stack[size - 1];
+                    if (edge[size - 1] < dagOffsets[v + 1]) {
+                        int w = dagTargets[edge[size - 1]++];
+                        if (!visited[w]) {
+                            visited[w] = true;
+                            low[w] = Integer.MAX_VALUE;
+                            stack[size] = w;
+                            edge[size++] = dagOffsets[w];
+                        } else {
+                            low[v] = Math.min(low[v], low[w]);
+                        }
+                    } else {
+                        post[v] = counter++;
+                        low[v] = Math.min(low[v], post[v]);
+                        size--;
+                        if (size > 0) {
+                            int parent = stack[size - 1];
+                            low[parent] = Math.min(low[parent], low[v]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Находит компоненты слабой связности системой непересекающихся множеств.
+         * @return номер представителя компоненты для каждого города
+         */
+        private static int[] weakComponents(CityGraph graph) {
+            int n = graph.cityCount();
+            int[] parent = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+            }
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstRoute(u), last = graph.firstRoute(u + 1); e < last; e++) {
+                    int a = find(parent, u);
+                    int b = find(parent, graph.routeTarget(e));
+                    if (a != b) {
+                        parent[Math.max(a, b)] = Math.min(a, b);
+                    }
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                parent[i] = find(parent, i);
+            }
+            return parent;
+        }
+
+        private static int find(int[] parent, int v) {
+            while (parent[v] != v) {
+                parent[v] = parent[parent[v]];
+                v = parent[v];
+            }
+            return v;
+        }
+
+        /**
+         * Находит компоненты сильной связности нерекурсивным алгоритмом Тарьяна.
+         * Компоненты нумеруются в порядке завершения, то есть в обратном топологическом порядке.
+         * @param graph снимок графа
+         * @param component заполняется номером компоненты каждого города
+         * @return количество компонент
+         */
+        private static int strongComponents(CityGraph graph, int[] component) {
+            int n = graph.cityCount();
+            int[] index = new int[n];
+            int[] lowLink = new int[n];
+            Arrays.fill(index, -1);
+            int[] callStack = new int[n];
+            int[] edge = new int[n];
+            int[] sccStack = new int[n];
+            boolean[] onStack = new boolean[n];
+            int counter = 0;
+            int sccSize = 0;
+            int count = 0;
+
+            for (int root = 0; root < n; root++) {
+                if (index[root] >= 0) {
+                    continue;
+                }
+                int depth = 0;
+                callStack[depth] = root;
+                edge[depth++] = graph.firstRoute(root);
+                index[root] = lowLink[root] = counter++;
+                sccStack[sccSize++] = root;
+                onStack[root] = true;
+                while (depth > 0) {
+                    int v = callStack[depth - 1];
+                    if (edge[depth - 1] < graph.firstRoute(v + 1)) {
+                        int w = graph.routeTarget(edge[depth - 1]++);
+                        if (index[w] < 0) {
+                            index[w] = lowLink[w] = counter++;
+                            sccStack[sccSize++] = w;
+                            onStack[w] = true;
+                            callStack[depth] = w;
+                            edge[depth++] = graph.firstRoute(w);
+                        } else if (onStack[w]) {
+                            lowLink[v] = Math.min(lowLink[v], index[w]);
+                        }
+                    } else {
+                        depth--;
+                        if (lowLink[v] == index[v]) {
+                            int w;
+                            do {
+                                w = sccStack[--sccSize];
+                                onStack[w] = false;
+                                component[w] = count;
+                            } while (w != v);
+                            count++;
+                        }
+                        if (depth > 0) {
+                            int parent = callStack[depth - 1];
+                            lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/* Параллельный поиск маршрутов для набора пар городов */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Пакетный поиск маршрутов: все пары (начало, конец) обрабатываются параллельно
+ * в ForkJoinPool. Каждый поиск берет рабочие массивы (SearchScratch) из пула снимка
+ * и возвращает их, поэтому они создаются не более одного раза на поток,
+ * а результаты возвращаются в порядке запросов.
+ */
+public final class RouteBatch {
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private RouteBatch() {}
+
+    /**
+     * Находит маршруты для всех пар городов. Снимок графа строится по городам начала;
+     * пока маршруты не меняются, повторные вызовы используют тот же снимок
+     * и его рабочие массивы поиска (см. CityGraph.current).
+     * @param queries пары городов, заданные объектами Path
+     * @return результаты в порядке запросов
+     */
+    public static List<RouteResult> findRoutes(List<Path> queries) {
+        if (queries == null) {
+            System.out.println("Ошибка: список запросов не может быть null.");
+            return Collections.emptyList();
+        }
+        List<City> starts = new ArrayList<>(queries.size());
+        for (Path query : queries) {
+            if (query != null && query.getStart() != null) {
+                starts.add(query.getStart());
+            }
+        }
+        return findRoutes(CityGraph.current(starts), queries);
+    }
+
+    /**
+     * Находит маршруты для всех пар городов по снимку графа в общем пуле потоков.
+     * @param graph снимок графа
+     * @param queries пары городов, заданные объектами Path
+     * @return результаты в порядке запросов
+     */
+    public static List<RouteResult> findRoutes(CityGraph graph, List<Path> queries) {
+        return findRoutes(graph, queries, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Находит маршруты для всех пар городов по снимку графа в указанном пуле потоков.
+     * @param graph снимок графа
+     * @param queries пары городов, заданные объектами Path
+     * @param pool пул потоков, в котором выполняются поиски
+     * @return результаты в порядке запросов
+     */
+    public static List<RouteResult> findRoutes(CityGraph graph, List<Path> queries, ForkJoinPool pool) {
+        if (graph == null || queries == null || pool == null) {
+            System.out.println("Ошибка: снимок графа, список запросов и пул потоков не могут быть null.");
+            return Collections.emptyList();
+        }
+        return run(queries, pool, graph::shortestPath);
+    }
+
+    /**
+     * Находит маршруты для всех пар городов с помощью иерархии сжатия в общем пуле потоков.
+     * @param hierarchy иерархия сжатия
+     * @param queries пары городов, заданные объектами Path
+     * @return результаты в порядке запросов
+     */
+    public static List<RouteResult> findRoutes(ContractionHierarchy hierarchy, List<Path> queries) {
+        if (hierarchy == null || queries == null) {
+            System.out.println("Ошибка: иерархия и список запросов не могут быть null.");
+            return Collections.emptyList();
+        }
+        return run(queries, ForkJoinPool.commonPool(), hierarchy::shortestPath);
+    }
+
+    /**
+     * Выполняет поиски параллельно и собирает результаты в порядке запросов.
+     * Поиск по снимку и по иерархии берет рабочие массивы из пула снимка (иерархии),
+     * поэтому при обработке пакета они создаются не более одного раза на поток пула.
+     * @param queries пары городов
+     * @param pool пул потоков
+     * @param search поиск маршрута для пары городов
+     * @return результаты в порядке запросов
+     */
+    private static List<RouteResult> run(List<Path> queries, ForkJoinPool pool,
+                                         BiFunction<City, City, RouteResult> search) {
+        RouteResult[] results = new RouteResult[queries.size()];
+        pool.submit(() -> IntStream.range(0, results.length).parallel().forEach(i -> {
+            Path query = queries.get(i);
+            results[i] = query == null || query.getStart() == null
+                    ? RouteResult.NOT_FOUND
+                    : search.apply(query.getStart(), query.getEnd());
+        })).join();
+        return Arrays.asList(results);
+    }
+}
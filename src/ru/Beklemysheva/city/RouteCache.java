@@ -0,0 +1,358 @@
+/* Общий кэш результатов поиска маршрутов */
+
+package ru.Beklemysheva.city;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный по размеру кэш результатов поиска маршрутов, общий для всех объектов Path.
+ * Ключом служит пара городов (по ссылке) и источник данных поиска: снимок графа,
+ * иерархия сжатия или null для поиска по объектам City.
+ * Вытесняются давно не использованные записи (LRU). Каждая запись помнит версию графа
+ * City.modificationCount(), поэтому после addRoute или removeRoute она считается устаревшей;
+ * результаты поиска по неизменяемым снимку и иерархии от версии не зависят.
+ *
+ * Кэш разделен на сегменты со своими блокировками и своей долей емкости, поэтому
+ * запросы к разным парам городов из разных потоков не ждут друг друга; порядок LRU
+ * соблюдается внутри сегмента. Источник данных хранится по слабой ссылке: снимок или
+ * иерархия, на которые больше никто не ссылается, собираются сборщиком мусора,
+ * а их записи удаляются при следующих обращениях к кэшу. Результат, полученный для более
+ * старой версии графа, не заменяет уже сохраненный более новый.
+ *
+ * Запись хранит либо полный результат, либо только стоимость (Path.getCost). Запрос
+ * стоимости отвечает по записи любого вида, а запрос маршрута по записи со стоимостью
+ * считается промахом и заменяет ее полным результатом. Запись только со стоимостью
+ * не вытесняет актуальный полный результат той же пары.
+ */
+public final class RouteCache {
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int SEGMENTS = 16;
+
+    private static final Segment[] SEGMENT_TABLE = new Segment[SEGMENTS];
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    static {
+        for (int i = 0; i < SEGMENTS; i++) {
+            SEGMENT_TABLE[i] = new Segment(share(DEFAULT_CAPACITY, i));
+        }
+    }
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private RouteCache() {}
+
+    /**
+     * Возвращает результат из кэша или выполняет поиск и сохраняет его результат.
+     * @param start город начала
+     * @param end город конца
+     * @param source неизменяемый источник данных поиска или null для поиска по объектам City
+     * @param search поиск маршрута, выполняемый при промахе
+     * @return результат поиска
+     */
+    static RouteResult get(City start, City end, Object source, Supplier<RouteResult> search) {
+        purge();
+        Key key = new Key(start, end, source, null);
+        long version = City.modificationCount();
+        Entry cached = lookup(key, version, true);
+        if (cached != null) {
+            return cached.result;
+        }
+        RouteResult result = search.get();
+        store(key, new Entry(result, result.getCost(), version));
+        return result;
+    }
+
+    /**
+     * Возвращает стоимость из кэша (из полного результата или записи только со стоимостью)
+     * или выполняет поиск стоимости и сохраняет ее.
+     * @param start город начала
+     * @param end город конца
+     * @param source неизменяемый источник данных поиска или null для поиска по объектам City
+     * @param search поиск стоимости, выполняемый при промахе
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    static double getCost(City start, City end, Object source, DoubleSupplier search) {
+        purge();
+        Key key = new Key(start, end, source, null);
+        long version = City.modificationCount();
+        Entry cached = lookup(key, version, false);
+        if (cached != null) {
+            return cached.cost;
+        }
+        double cost = search.getAsDouble();
+        store(key, new Entry(null, cost, version));
+        return cost;
+    }
+
+    /**
+     * Ищет актуальную запись кэша и учитывает обращение в счетчиках попаданий и промахов.
+     * @param key ключ записи
+     * @param version текущая версия графа
+     * @param route true если нужен полный результат, а не только стоимость
+     * @return запись или null
+     */
+    private static Entry lookup(Key key, long version, boolean route) {
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(key);
+        }
+        if (entry != null && isCurrent(key, entry, version) && (!route || entry.result != null)) {
+            HITS.increment();
+            return entry;
+        }
+        MISSES.increment();
+        return null;
+    }
+
+    /**
+     * Сохраняет запись, если она не старше сохраненной и не заменяет полный
+     * актуальный результат записью только со стоимостью.
+     * @param key ключ для поиска (источник по обычной ссылке)
+     * @param entry новая запись
+     */
+    private static void store(Key key, Entry entry) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.limit == 0) {
+                return;
+            }
+            Entry existing = segment.entries.get(key);
+            if (existing != null) {
+                if (existing.version > entry.version) {
+                    return;
+                }
+                if (entry.result == null && existing.result != null && isCurrent(key, existing, entry.version)) {
+                    return;
+                }
+            }
+            Key stored = key.source == null ? key : new Key(key.start, key.end, key.source, COLLECTED);
+            segment.entries.put(stored, entry);
+        }
+    }
+
+    /**
+     * Проверяет, что запись соответствует версии графа; результаты поиска по снимку
+     * и иерархии от версии не зависят.
+     */
+    private static boolean isCurrent(Key key, Entry entry, long version) {
+        return key.source != null || entry.version == version;
+    }
+
+    /**
+     * Удаляет записи, источники данных которых собраны сборщиком мусора.
+     */
+    private static void purge() {
+        Reference<?> reference;
+        while ((reference = COLLECTED.poll()) != null) {
+            Key key = ((SourceReference) reference).key;
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                segment.entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Возвращает сегмент, в котором хранится ключ.
+     * @param key ключ записи
+     * @return сегмент кэша
+     */
+    private static Segment segmentFor(Key key) {
+        int h = key.hash;
+        return SEGMENT_TABLE[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Доля общей емкости, приходящаяся на сегмент; сумма долей равна емкости.
+     * @param total общая емкость
+     * @param index номер сегмента
+     * @return емкость сегмента
+     */
+    private static int share(int total, int index) {
+        return total / SEGMENTS + (index < total % SEGMENTS ? 1 : 0);
+    }
+
+    /**
+     * Устанавливает максимальное количество записей в кэше.
+     * @param maxSize максимальное количество записей (0 отключает кэширование)
+     */
+    public static void setCapacity(int maxSize) {
+        if (maxSize < 0) {
+            System.out.println("Ошибка: размер кэша не может быть отрицательным.");
+            return;
+        }
+        capacity = maxSize;
+        for (int i = 0; i < SEGMENTS; i++) {
+            Segment segment = SEGMENT_TABLE[i];
+            synchronized (segment) {
+                segment.limit = share(maxSize, i);
+                while (segment.entries.size() > segment.limit) {
+                    segment.entries.remove(segment.entries.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает максимальное количество записей в кэше.
+     * @return максимальное количество записей
+     */
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Возвращает текущее количество записей в кэше.
+     * @return количество записей
+     */
+    public static int size() {
+        purge();
+        int size = 0;
+        for (Segment segment : SEGMENT_TABLE) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Возвращает количество попаданий в кэш.
+     * @return количество попаданий
+     */
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * Возвращает количество промахов кэша.
+     * @return количество промахов
+     */
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Очищает кэш и сбрасывает счетчики.
+     */
+    public static void clear() {
+        for (Segment segment : SEGMENT_TABLE) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    /**
+     * Сегмент кэша: LRU-таблица со своей емкостью; доступ синхронизирован по сегменту.
+     */
+    private static final class Segment {
+        int limit;
+
+        final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > limit;
+            }
+        };
+
+        Segment(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Ключ кэша: города и источник данных поиска, сравниваемые по ссылке.
+     * Ключ для поиска держит источник обычной ссылкой, сохраненный ключ — слабой.
+     * Ключ, источник которого уже собран, равен только самому себе.
+     */
+    private static final class Key {
+        final City start;
+        final City end;
+        final Object source;
+        final SourceReference reference;
+        final int hash;
+
+        Key(City start, City end, Object source, ReferenceQueue<Object> queue) {
+            this.start = start;
+            this.end = end;
+            this.source = queue == null ? source : null;
+            this.reference = queue == null || source == null ? null : new SourceReference(source, queue, this);
+            int result = System.identityHashCode(start);
+            result = 31 * result + System.identityHashCode(end);
+            this.hash = 31 * result + System.identityHashCode(source);
+        }
+
+        /**
+         * Возвращает источник данных поиска.
+         * @return источник или null, если поиск идет по объектам City или источник собран
+         */
+        Object source() {
+            return reference != null ? reference.get() : source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            if (start != key.start || end != key.end || hash != key.hash) {
+                return false;
+            }
+            Object mine = source();
+            Object theirs = key.source();
+            if (mine == null && theirs == null) {
+                return reference == null && key.reference == null;
+            }
+            return mine == theirs;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Слабая ссылка на источник данных, знающая свой ключ, чтобы удалить запись после сборки.
+     */
+    private static final class SourceReference extends WeakReference<Object> {
+        final Key key;
+
+        SourceReference(Object source, ReferenceQueue<Object> queue, Key key) {
+            super(source, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Запись кэша: результат поиска (или null, если известна только стоимость),
+     * стоимость и версия графа, для которой они получены.
+     */
+    private static final class Entry {
+        final RouteResult result;
+        final double cost;
+        final long version;
+
+        Entry(RouteResult result, double cost, long version) {
+            this.result = result;
+            this.cost = cost;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/* Клиент локального сервера маршрутов */
+
+package ru.Beklemysheva.city;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Клиент сервера RouteServer. Запросы отправляются без ожидания ответов на предыдущие
+ * (конвейер), а ответы, которые сервер возвращает в порядке запросов, разбирает
+ * отдельный виртуальный поток и завершает ими CompletableFuture.
+ * Методы отправки можно вызывать из нескольких потоков одновременно.
+ * Города полученного маршрута создаются заново по названиям.
+ */
+public final class RouteClient implements AutoCloseable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Ожидающий ответа запрос.
+     */
+    private static final class Pending {
+        final byte operation;
+        final String start;
+        final String end;
+        final CompletableFuture<RouteResult> result = new CompletableFuture<>();
+
+        Pending(byte operation, String start, String end) {
+            this.operation = operation;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Создает клиент на открытом соединении и запускает разбор ответов.
+     * @param socket соединение с сервером
+     */
+    private RouteClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread.ofVirtual().name("route-client-reader").start(this::readResponses);
+    }
+
+    /**
+     * Подключается к серверу маршрутов на localhost.
+     * @param port порт сервера
+     * @return клиент или null, если подключиться не удалось
+     */
+    public static RouteClient connect(int port) {
+        try {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            return new RouteClient(socket);
+        } catch (IOException e) {
+            System.out.println("Ошибка подключения к серверу маршрутов: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Отправляет запрос маршрута, не дожидаясь ответа.
+     * @param start название города начала
+     * @param end название города конца
+     * @return будущий результат; RouteResult.NOT_FOUND, если пути нет или запрос не выполнен
+     */
+    public CompletableFuture<RouteResult> route(String start, String end) {
+        return send(RouteServer.ROUTE, start, end);
+    }
+
+    /**
+     * Отправляет запрос только стоимости маршрута, не дожидаясь ответа.
+     * Города в результате не передаются: getCities() возвращает только начало и конец.
+     * @param start название города начала
+     * @param end название города конца
+     * @return будущий результат; RouteResult.NOT_FOUND, если пути нет или запрос не выполнен
+     */
+    public CompletableFuture<RouteResult> cost(String start, String end) {
+        return send(RouteServer.COST, start, end);
+    }
+
+    /**
+     * Закрывает соединение. Запросы без ответа завершаются результатом RouteResult.NOT_FOUND.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // соединение уже закрыто
+        }
+        fail(null);
+    }
+
+    /**
+     * Отправляет запрос одним кадром. Запрос ставится в очередь ожидания под той же
+     * блокировкой, что и запись, поэтому порядок очереди совпадает с порядком запросов в сокете.
+     */
+    private CompletableFuture<RouteResult> send(byte operation, String start, String end) {
+        Pending request = new Pending(operation, start, end);
+        if (start == null || end == null) {
+            System.out.println("Ошибка: названия городов не могут быть null.");
+            request.result.complete(RouteResult.NOT_FOUND);
+            return request.result;
+        }
+        int length = 1 + utfLength(start) + utfLength(end);
+        if (length > RouteServer.MAX_FRAME || utfLength(start) > 0xFFFF + 2 || utfLength(end) > 0xFFFF + 2) {
+            System.out.println("Ошибка: название города слишком длинное.");
+            request.result.complete(RouteResult.NOT_FOUND);
+            return request.result;
+        }
+        synchronized (out) {
+            if (closed) {
+                request.result.complete(RouteResult.NOT_FOUND);
+                return request.result;
+            }
+            try {
+                out.writeInt(length);
+                out.writeByte(operation);
+                out.writeUTF(start);
+                out.writeUTF(end);
+                pending.add(request);
+                out.flush();
+            } catch (IOException e) {
+                request.result.complete(RouteResult.NOT_FOUND);
+                fail("Ошибка отправки запроса: " + e.getMessage());
+            }
+        }
+        return request.result;
+    }
+
+    /**
+     * Разбирает ответы сервера по порядку, пока соединение открыто.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 1 || length > RouteServer.MAX_FRAME) {
+                    fail("Ошибка: неверная длина ответа " + length + ".");
+                    return;
+                }
+                Pending request = pending.poll();
+                byte status = in.readByte();
+                RouteResult result = RouteResult.NOT_FOUND;
+                if (status == RouteServer.FOUND) {
+                    double cost = in.readDouble();
+                    if (request == null) {
+                        fail("Ошибка: ответ без запроса.");
+                        return;
+                    }
+                    if (request.operation == RouteServer.ROUTE) {
+                        City[] cities = new City[in.readInt()];
+                        for (int i = 0; i < cities.length; i++) {
+                            cities[i] = new City(in.readUTF());
+                        }
+                        result = new RouteResult(cities, cost);
+                    } else {
+                        result = new RouteResult(new City[]{new City(request.start), new City(request.end)}, cost);
+                    }
+                } else if (status == RouteServer.ERROR) {
+                    System.out.println("Ошибка сервера маршрутов: " + in.readUTF());
+                }
+                if (request != null) {
+                    request.result.complete(result);
+                }
+            }
+        } catch (IOException e) {
+            fail(closed ? null : "Соединение с сервером маршрутов потеряно: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Завершает все ожидающие запросы результатом RouteResult.NOT_FOUND.
+     * @param message сообщение об ошибке или null
+     */
+    private void fail(String message) {
+        if (message != null) {
+            System.out.println(message);
+        }
+        for (Pending request = pending.poll(); request != null; request = pending.poll()) {
+            request.result.complete(RouteResult.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Возвращает длину строки в формате writeUTF вместе с двумя байтами длины.
+     */
+    private static int utfLength(String value) {
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,29 @@
+/* Слушатель изменений маршрутов между городами */
+
+package ru.Beklemysheva.city;
+
+/**
+ * Получает уведомления об успешных вызовах City.addRoute и City.removeRoute.
+ * Уведомление приходит в потоке, изменившем маршрут, после того как изменение
+ * уже видно через методы City; блокировки городов в этот момент не удерживаются.
+ * Поэтому уведомления об изменениях из разных потоков могут прийти в порядке,
+ * отличном от порядка самих изменений, а к моменту обработки маршрут может быть
+ * уже удален или заменен. Слушатель, которому важно текущее состояние, должен
+ * перечитать маршруты города отправления, а не полагаться на порядок событий.
+ */
+public interface RouteListener {
+
+    /**
+     * Вызывается после добавления маршрута.
+     * @param source город отправления
+     * @param route добавленный маршрут
+     */
+    void routeAdded(City source, Route route);
+
+    /**
+     * Вызывается после удаления маршрута.
+     * @param source город отправления
+     * @param route удаленный маршрут
+     */
+    void routeRemoved(City source, Route route);
+}
@@ -0,0 +1,84 @@
+/* Результат поиска маршрута между двумя городами */
+
+package ru.Beklemysheva.city;
+
+/**
+ * Неизменяемый результат поиска маршрута: последовательность городов и её суммарная стоимость.
+ */
+public final class RouteResult {
+    /**
+     * Результат, означающий, что путь построить невозможно.
+     */
+    public static final RouteResult NOT_FOUND = new RouteResult(new City[0], Double.POSITIVE_INFINITY);
+
+    private final City[] cities;
+    private final double cost;
+
+    /**
+     * Создает результат поиска маршрута.
+     * @param cities города маршрута в порядке прохождения
+     * @param cost суммарная стоимость маршрута
+     */
+    RouteResult(City[] cities, double cost) {
+        this.cities = cities;
+        this.cost = cost;
+    }
+
+    /**
+     * Возвращает города маршрута в порядке прохождения.
+     * @return копия массива городов (пустой массив, если путь не найден)
+     */
+    public City[] getCities() {
+        return cities.clone();
+    }
+
+    /**
+     * Возвращает количество городов маршрута без копирования массива.
+     * @return количество городов (0, если путь не найден)
+     */
+    int length() {
+        return cities.length;
+    }
+
+    /**
+     * Возвращает город маршрута по номеру без копирования массива.
+     * @param index номер города от 0 до length() - 1
+     * @return город
+     */
+    City cityAt(int index) {
+        return cities[index];
+    }
+
+    /**
+     * Возвращает суммарную стоимость маршрута.
+     * @return стоимость маршрута или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Проверяет, был ли найден маршрут.
+     * @return true если маршрут существует
+     */
+    public boolean isFound() {
+        return cities.length > 0;
+    }
+
+    /**
+     * Возвращает строковое представление результата.
+     * @return строка вида "A -> B -> C (8.0)" или "Путь не найден"
+     */
+    @Override
+    public String toString() {
+        if (!isFound()) {
+            return "Путь не найден";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (City city : cities) {
+            sb.append(city.getName()).append(" -> ");
+        }
+        sb.setLength(sb.length() - 4);
+        return sb.append(" (").append(cost).append(")").toString();
+    }
+}
@@ -0,0 +1,432 @@
+/* Алгоритмы поиска маршрута минимальной стоимости по графу городов */
+
+package ru.Beklemysheva.city;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Итеративный поиск маршрута минимальной стоимости (алгоритм Дейкстры, A*
+ * и двунаправленный алгоритм Дейкстры).
+ * Города различаются по ссылке, поэтому одноименные города не смешиваются.
+ * Каждый поиск нумерует посещенные города по порядку (CityIds) и хранит стоимости
+ * в массивах по этим номерам, а очередь — индексированная d-арная куча
+ * с уменьшением приоритета на месте, как в поиске по снимку CityGraph.
+ * Время работы O((V + E) log V), рекурсия не используется.
+ */
+final class RouteSearch {
+
+    /**
+     * Закрытый конструктор: класс содержит только статические методы.
+     */
+    private RouteSearch() {}
+
+    /**
+     * Нумерация городов одного поиска. Поиск по изменяемому графу не знает заранее,
+     * какие города он посетит, поэтому номера 0, 1, 2, ... выдаются по мере обхода.
+     * Таблица с открытой адресацией сравнивает города по ссылке и хранит номера
+     * примитивами, поэтому при обходе не создаются упакованные значения и узлы словаря.
+     */
+    private static final class CityIds {
+        private City[] keys = new City[32];
+        private int[] slots = new int[32];
+        private City[] cities = new City[16];
+        private int size;
+
+        /**
+         * Возвращает номер города.
+         * @param city город
+         * @return номер или -1, если город еще не встречался
+         */
+        int idOf(City city) {
+            int mask = keys.length - 1;
+            for (int i = slot(city, mask); keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == city) {
+                    return slots[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Возвращает номер города, присваивая следующий свободный номер новому городу.
+         * @param city город
+         * @return номер города
+         */
+        int add(City city) {
+            int mask = keys.length - 1;
+            int i = slot(city, mask);
+            for (; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == city) {
+                    return slots[i];
+                }
+            }
+            int id = size++;
+            keys[i] = city;
+            slots[i] = id;
+            if (id == cities.length) {
+                cities = Arrays.copyOf(cities, id * 2);
+            }
+            cities[id] = city;
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        /**
+         * Возвращает город по номеру.
+         * @param id номер города
+         * @return город
+         */
+        City cityAt(int id) {
+            return cities[id];
+        }
+
+        /**
+         * Возвращает количество пронумерованных городов.
+         * @return количество городов
+         */
+        int size() {
+            return size;
+        }
+
+        private void rehash() {
+            keys = new City[keys.length * 2];
+            slots = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int id = 0; id < size; id++) {
+                int i = slot(cities[id], mask);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = cities[id];
+                slots[i] = id;
+            }
+        }
+
+        private static int slot(City city, int mask) {
+            int h = System.identityHashCode(city) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Состояние одного направления поиска: стоимость и предыдущий город по номерам CityIds
+     * и индексированная куча с уменьшением приоритета на месте. Массивы растут вместе
+     * с нумерацией; для номеров за их пределами стоимость считается бесконечной.
+     */
+    private static final class Frontier {
+        private double[] dist = new double[0];
+        private int[] parent = new int[0];
+        final IndexedDaryHeap queue = new IndexedDaryHeap(16);
+
+        /**
+         * Запоминает стоимость до города и предыдущий город, добавляя город в очередь
+         * или уменьшая его приоритет.
+         * @param v номер города
+         * @param cost стоимость
+         * @param previous номер предыдущего города (-1 для города, с которого начат поиск)
+         * @param priority приоритет в очереди
+         */
+        void reach(int v, double cost, int previous, double priority) {
+            if (v >= dist.length) {
+                int old = dist.length;
+                int grown = Math.max(v + 1, Math.max(16, old * 2));
+                dist = Arrays.copyOf(dist, grown);
+                parent = Arrays.copyOf(parent, grown);
+                Arrays.fill(dist, old, grown, Double.POSITIVE_INFINITY);
+                queue.ensureCapacity(grown);
+            }
+            dist[v] = cost;
+            parent[v] = previous;
+            queue.insertOrDecrease(v, priority);
+        }
+
+        /**
+         * Возвращает найденную стоимость до города.
+         * @param v номер города
+         * @return стоимость или Double.POSITIVE_INFINITY, если город не достигнут
+         */
+        double dist(int v) {
+            return v >= 0 && v < dist.length ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Возвращает номер предыдущего города.
+         * @param v номер достигнутого города
+         * @return номер предыдущего города (-1 для города, с которого начат поиск)
+         */
+        int parent(int v) {
+            return parent[v];
+        }
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости алгоритмом Дейкстры.
+     * @param start город начала
+     * @param end город конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    static RouteResult dijkstra(City start, City end) {
+        return search(start, end, 0.0);
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости алгоритмом A*.
+     * Оценка оставшегося пути равна евклидову расстоянию до города конца,
+     * умноженному на scale. Если scale не больше минимальной стоимости единицы расстояния
+     * среди маршрутов, по которым идет поиск (см. City.heuristicScale), оценка не превышает
+     * реальную стоимость и результат совпадает по стоимости с алгоритмом Дейкстры.
+     * Если у города конца нет координат, выполняется обычный поиск Дейкстры.
+     * @param start город начала
+     * @param end город конца
+     * @param scale множитель эвристики (не меньше 0)
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    static RouteResult aStar(City start, City end, double scale) {
+        return search(start, end, end.hasCoordinates() ? scale : 0.0);
+    }
+
+    /**
+     * Общий цикл поиска Дейкстры / A*.
+     * @param start город начала
+     * @param end город конца
+     * @param scale множитель эвристики (0 для алгоритма Дейкстры)
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    private static RouteResult search(City start, City end, double scale) {
+        CityIds ids = new CityIds();
+        Frontier frontier = new Frontier();
+        double cost = settle(start, end, scale, ids, frontier);
+        return cost == Double.POSITIVE_INFINITY ? RouteResult.NOT_FOUND : buildResult(ids, frontier, end, cost);
+    }
+
+    /**
+     * Находит только стоимость маршрута минимальной стоимости: предыдущие города
+     * не запоминаются, а маршрут не восстанавливается.
+     * @param start город начала
+     * @param end город конца
+     * @param scale множитель эвристики A* (0 для алгоритма Дейкстры или если у города конца нет координат)
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    static double cost(City start, City end, double scale) {
+        return settle(start, end, end.hasCoordinates() ? scale : 0.0, new CityIds(), new Frontier());
+    }
+
+    /**
+     * Поиск Дейкстры / A* до извлечения города конца.
+     * @param start город начала
+     * @param end город конца
+     * @param scale множитель эвристики (0 для алгоритма Дейкстры)
+     * @param ids нумерация городов поиска
+     * @param frontier стоимости, предыдущие города и очередь поиска
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    private static double settle(City start, City end, double scale, CityIds ids, Frontier frontier) {
+        IndexedDaryHeap queue = frontier.queue;
+        frontier.reach(ids.add(start), 0.0, -1, scale * start.distanceTo(end));
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 1;
+
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            City current = ids.cityAt(v);
+            double cost = frontier.dist(v);
+            settled++;
+            if (current == end) {
+                SearchProbe.record(settled, relaxed, peak);
+                return cost;
+            }
+            for (Route route : current.routeArray()) {
+                relaxed++;
+                City neighbor = route.getDestination();
+                double candidate = cost + route.getCost();
+                int w = ids.add(neighbor);
+                if (candidate < frontier.dist(w)) {
+                    frontier.reach(w, candidate, v, candidate + scale * neighbor.distanceTo(end));
+                }
+            }
+            peak = Math.max(peak, queue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Находит все города, достижимые из города начала со стоимостью не больше budget
+     * (алгоритм Дейкстры с отсечением по бюджету).
+     * @param start город начала
+     * @param budget наибольшая допустимая стоимость
+     * @return минимальная стоимость до каждого достижимого города, включая город начала
+     */
+    static Map<City, Double> withinCost(City start, double budget) {
+        CityIds ids = new CityIds();
+        Frontier frontier = new Frontier();
+        IndexedDaryHeap queue = frontier.queue;
+        Map<City, Double> result = new IdentityHashMap<>();
+
+        frontier.reach(ids.add(start), 0.0, -1, 0.0);
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 1;
+
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            City current = ids.cityAt(v);
+            double cost = frontier.dist(v);
+            settled++;
+            result.put(current, cost);
+            for (Route route : current.routeArray()) {
+                relaxed++;
+                double candidate = cost + route.getCost();
+                if (candidate > budget) {
+                    continue;
+                }
+                int w = ids.add(route.getDestination());
+                if (candidate < frontier.dist(w)) {
+                    frontier.reach(w, candidate, v, candidate);
+                }
+            }
+            peak = Math.max(peak, queue.size());
+        }
+        SearchProbe.record(settled, relaxed, peak);
+        return result;
+    }
+
+    /**
+     * Находит маршрут минимальной стоимости двунаправленным алгоритмом Дейкстры.
+     * Прямой поиск идет от города начала по исходящим маршрутам, обратный —
+     * от города конца по входящим. На каждом шаге расширяется меньшая очередь.
+     * Поиск останавливается, когда сумма минимальных стоимостей в обеих очередях
+     * не меньше стоимости лучшего найденного маршрута через точку встречи.
+     * Если город начала совпадает с городом конца, маршрут состоит из одного города.
+     * @param start город начала
+     * @param end город конца
+     * @return найденный маршрут или RouteResult.NOT_FOUND
+     */
+    static RouteResult bidirectional(City start, City end) {
+        if (start == end) {
+            return new RouteResult(new City[]{start}, 0.0);
+        }
+        CityIds ids = new CityIds();
+        Frontier forward = new Frontier();
+        Frontier backward = new Frontier();
+        IndexedDaryHeap forwardQueue = forward.queue;
+        IndexedDaryHeap backwardQueue = backward.queue;
+
+        int source = ids.add(start);
+        int target = ids.add(end);
+        forward.reach(source, 0.0, -1, 0.0);
+        backward.reach(target, 0.0, -1, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        long settled = 0;
+        long relaxed = 0;
+        int peak = 2;
+
+        while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+            if (forwardQueue.peekPriority() + backwardQueue.peekPriority() >= best) {
+                break;
+            }
+            if (forwardQueue.size() <= backwardQueue.size()) {
+                int v = forwardQueue.poll();
+                double cost = forward.dist(v);
+                settled++;
+                Route[] routes = ids.cityAt(v).routeArray();
+                relaxed += routes.length;
+                for (Route route : routes) {
+                    double candidate = cost + route.getCost();
+                    int w = ids.add(route.getDestination());
+                    if (candidate < forward.dist(w)) {
+                        forward.reach(w, candidate, v, candidate);
+                        double other = backward.dist(w);
+                        if (candidate + other < best) {
+                            best = candidate + other;
+                            meeting = w;
+                        }
+                    }
+                }
+            } else {
+                int v = backwardQueue.poll();
+                double cost = backward.dist(v);
+                settled++;
+                City.Incoming incoming = ids.cityAt(v).incomingSnapshot();
+                relaxed += incoming.sources.length;
+                for (int i = 0; i < incoming.sources.length; i++) {
+                    double candidate = cost + incoming.costs[i];
+                    int w = ids.add(incoming.sources[i]);
+                    if (candidate < backward.dist(w)) {
+                        backward.reach(w, candidate, v, candidate);
+                        double other = forward.dist(w);
+                        if (candidate + other < best) {
+                            best = candidate + other;
+                            meeting = w;
+                        }
+                    }
+                }
+            }
+            peak = Math.max(peak, forwardQueue.size() + backwardQueue.size());
+        }
+
+        SearchProbe.record(settled, relaxed, peak);
+        if (meeting < 0) {
+            return RouteResult.NOT_FOUND;
+        }
+        int length = 0;
+        for (int v = meeting; v >= 0; v = forward.parent(v)) {
+            length++;
+        }
+        for (int v = backward.parent(meeting); v >= 0; v = backward.parent(v)) {
+            length++;
+        }
+        City[] path = new City[length];
+        int i = 0;
+        for (int v = meeting; v >= 0; v = forward.parent(v)) {
+            path[i++] = ids.cityAt(v);
+        }
+        reverse(path, i);
+        for (int v = backward.parent(meeting); v >= 0; v = backward.parent(v)) {
+            path[i++] = ids.cityAt(v);
+        }
+        return new RouteResult(path, best);
+    }
+
+    /**
+     * Восстанавливает маршрут по номерам предыдущих городов.
+     * @param ids нумерация городов поиска
+     * @param frontier состояние завершенного поиска
+     * @param end город конца
+     * @param cost суммарная стоимость маршрута
+     * @return результат поиска
+     */
+    private static RouteResult buildResult(CityIds ids, Frontier frontier, City end, double cost) {
+        int last = ids.idOf(end);
+        int length = 0;
+        for (int v = last; v >= 0; v = frontier.parent(v)) {
+            length++;
+        }
+        City[] path = new City[length];
+        int i = length;
+        for (int v = last; v >= 0; v = frontier.parent(v)) {
+            path[--i] = ids.cityAt(v);
+        }
+        return new RouteResult(path, cost);
+    }
+
+    /**
+     * Переставляет первые count элементов массива в обратном порядке.
+     * @param path массив городов
+     * @param count количество элементов
+     */
+    private static void reverse(City[] path, int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            City swap = path[i];
+            path[i] = path[j];
+            path[j] = swap;
+        }
+    }
+}
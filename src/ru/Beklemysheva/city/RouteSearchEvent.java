@@ -0,0 +1,45 @@
+/* Событие Java Flight Recorder для одного поиска маршрута */
+
+package ru.Beklemysheva.city;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR, которое записывается для каждого поиска маршрута через Path,
+ * пока событие включено в записи (например, -XX:StartFlightRecording с настройкой
+ * ru.Beklemysheva.city.RouteSearch#enabled=true). Длительность события — время поиска.
+ */
+@Name("ru.Beklemysheva.city.RouteSearch")
+@Label("Route Search")
+@Category({"Beklemysheva", "City"})
+@Description("Поиск маршрута между двумя городами")
+@StackTrace(false)
+final class RouteSearchEvent extends jdk.jfr.Event {
+    @Label("Start")
+    String start;
+
+    @Label("End")
+    String end;
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("Cost")
+    double cost;
+
+    @Label("Nodes Settled")
+    long settled;
+
+    @Label("Edges Relaxed")
+    long relaxed;
+
+    @Label("Peak Frontier")
+    int peakFrontier;
+}
@@ -0,0 +1,357 @@
+/* Сбор статистики поисков маршрутов */
+
+package ru.Beklemysheva.city;
+
+import jdk.jfr.EventType;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Статистика поисков маршрутов через Path: количество извлеченных городов и просмотренных
+ * маршрутов, наибольший размер очереди, гистограмма времени и список самых долгих поисков.
+ * Поиски только стоимости (Path.getCost) учитываются под названием алгоритма
+ * с пометкой «(стоимость)».
+ * Каждый поиск также записывается событием JFR RouteSearchEvent, если оно включено в записи.
+ *
+ * По умолчанию сбор выключен; если выключены и статистика, и событие JFR,
+ * поиск выполняется без замеров — остается только проверка двух флагов.
+ */
+public final class RouteSearchStats implements RouteSearchStatsMXBean {
+    private static final RouteSearchStats INSTANCE = new RouteSearchStats();
+    private static final EventType EVENT_TYPE = EventType.getEventType(RouteSearchEvent.class);
+    private static final String OBJECT_NAME = "ru.Beklemysheva.city:type=RouteSearchStats";
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    private static final int SLOWEST = 10;
+
+    private volatile boolean enabled;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+    private final LongAdder relaxed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxFrontier = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong slowThreshold = new AtomicLong();
+    private final long[] slowestNanos = new long[SLOWEST];
+    private final String[] slowestDescriptions = new String[SLOWEST];
+
+    /**
+     * Закрытый конструктор: используется единственный экземпляр.
+     */
+    private RouteSearchStats() {}
+
+    /**
+     * Возвращает единственный экземпляр статистики.
+     * @return статистика поисков
+     */
+    public static RouteSearchStats getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Регистрирует статистику в платформенном MBeanServer, чтобы ее было видно в JConsole и JMC.
+     * Повторная регистрация ничего не делает.
+     * @return true если статистика зарегистрирована
+     */
+    public static boolean register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+            }
+            return true;
+        } catch (JMException e) {
+            System.out.println("Ошибка регистрации статистики поиска: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Выполняет поиск маршрута с замерами, если включена статистика или событие JFR.
+     * @param start город начала
+     * @param end город конца
+     * @param algorithm название алгоритма
+     * @param search поиск маршрута
+     * @return результат поиска
+     */
+    static RouteResult measure(City start, City end, String algorithm, Supplier<RouteResult> search) {
+        if (!INSTANCE.enabled && !EVENT_TYPE.isEnabled()) {
+            return search.get();
+        }
+        return measure(start, end, algorithm, search, RouteResult::getCost);
+    }
+
+    /**
+     * Выполняет поиск только стоимости с замерами, если включена статистика или событие JFR.
+     * @param start город начала
+     * @param end город конца
+     * @param algorithm название алгоритма
+     * @param search поиск стоимости
+     * @return стоимость или Double.POSITIVE_INFINITY, если путь не найден
+     */
+    static double measureCost(City start, City end, String algorithm, DoubleSupplier search) {
+        if (!INSTANCE.enabled && !EVENT_TYPE.isEnabled()) {
+            return search.getAsDouble();
+        }
+        return measure(start, end, algorithm + " (стоимость)", search::getAsDouble, Double::doubleValue);
+    }
+
+    /**
+     * Выполняет поиск с замерами и учитывает его.
+     * @param start город начала
+     * @param end город конца
+     * @param algorithm название алгоритма
+     * @param search поиск
+     * @param costOf стоимость найденного результата (бесконечность, если путь не найден)
+     * @return результат поиска
+     */
+    private static <T> T measure(City start, City end, String algorithm, Supplier<T> search,
+                                 ToDoubleFunction<T> costOf) {
+        boolean collect = INSTANCE.enabled;
+        RouteSearchEvent record = EVENT_TYPE.isEnabled() ? new RouteSearchEvent() : null;
+        SearchProbe probe = SearchProbe.arm();
+        T result;
+        long begin = System.nanoTime();
+        if (record != null) {
+            record.begin();
+        }
+        try {
+            result = search.get();
+        } finally {
+            probe.disarm();
+        }
+        long elapsed = System.nanoTime() - begin;
+        double cost = costOf.applyAsDouble(result);
+        boolean found = cost != Double.POSITIVE_INFINITY;
+        if (record != null) {
+            record.end();
+            if (record.shouldCommit()) {
+                record.start = start.getName();
+                record.end = end.getName();
+                record.algorithm = algorithm;
+                record.found = found;
+                record.cost = cost;
+                record.settled = probe.settled;
+                record.relaxed = probe.relaxed;
+                record.peakFrontier = probe.peakFrontier;
+                record.commit();
+            }
+        }
+        if (collect) {
+            INSTANCE.add(start, end, algorithm, found, probe, elapsed);
+        }
+        return result;
+    }
+
+    /**
+     * Учитывает завершенный поиск.
+     */
+    private void add(City start, City end, String algorithm, boolean found, SearchProbe probe, long nanos) {
+        searches.increment();
+        if (!found) {
+            notFound.increment();
+        }
+        settled.add(probe.settled);
+        relaxed.add(probe.relaxed);
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        maxFrontier.accumulate(probe.peakFrontier);
+        histogram.incrementAndGet(bucket(nanos));
+        if (nanos > slowThreshold.get()) {
+            addSlow(nanos, String.format(Locale.ROOT, "%s -> %s [%s]: %.3f мс, городов %d, маршрутов %d, очередь %d",
+                    start.getName(), end.getName(), algorithm, nanos / 1e6,
+                    probe.settled, probe.relaxed, probe.peakFrontier));
+        }
+    }
+
+    /**
+     * Добавляет поиск в список самых долгих, вытесняя самый быстрый из них.
+     */
+    private synchronized void addSlow(long nanos, String description) {
+        int fastest = 0;
+        for (int i = 1; i < SLOWEST; i++) {
+            if (slowestNanos[i] < slowestNanos[fastest]) {
+                fastest = i;
+            }
+        }
+        if (nanos <= slowestNanos[fastest]) {
+            return;
+        }
+        slowestNanos[fastest] = nanos;
+        slowestDescriptions[fastest] = description;
+        long threshold = Long.MAX_VALUE;
+        for (long value : slowestNanos) {
+            threshold = Math.min(threshold, value);
+        }
+        slowThreshold.set(threshold);
+    }
+
+    /**
+     * Возвращает номер ячейки гистограммы: 8 ячеек на каждую степень двойки.
+     * @param nanos время в наносекундах
+     * @return номер ячейки
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Возвращает верхнюю границу ячейки гистограммы.
+     * @param bucket номер ячейки
+     * @return наибольшее время в ячейке в наносекундах
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Возвращает процентиль времени поиска.
+     * @param fraction доля от 0 до 1
+     * @return время в миллисекундах
+     */
+    private double percentile(double fraction) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos.get()) / 1e6;
+            }
+        }
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNotFoundCount() {
+        return notFound.sum();
+    }
+
+    @Override
+    public long getTotalSettled() {
+        return settled.sum();
+    }
+
+    @Override
+    public long getTotalRelaxed() {
+        return relaxed.sum();
+    }
+
+    @Override
+    public int getMaxPeakFrontier() {
+        return (int) maxFrontier.get();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        long count = searches.sum();
+        return count == 0 ? 0.0 : totalNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return percentile(0.9);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return percentile(0.999);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public synchronized String[] getSlowestSearches() {
+        Integer[] order = new Integer[SLOWEST];
+        for (int i = 0; i < SLOWEST; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(slowestNanos[b], slowestNanos[a]));
+        int count = 0;
+        String[] result = new String[SLOWEST];
+        for (int i : order) {
+            if (slowestDescriptions[i] != null) {
+                result[count++] = slowestDescriptions[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public synchronized void reset() {
+        searches.reset();
+        notFound.reset();
+        settled.reset();
+        relaxed.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        maxFrontier.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        Arrays.fill(slowestNanos, 0);
+        Arrays.fill(slowestDescriptions, null);
+        slowThreshold.set(0);
+    }
+}
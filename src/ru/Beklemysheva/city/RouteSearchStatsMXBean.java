@@ -0,0 +1,101 @@
+/* Интерфейс управления статистикой поиска маршрутов */
+
+package ru.Beklemysheva.city;
+
+/**
+ * Сводная статистика поисков маршрутов через Path, доступная по JMX
+ * под именем ru.Beklemysheva.city:type=RouteSearchStats.
+ * Время указывается в миллисекундах; процентили берутся из логарифмической
+ * гистограммы с погрешностью не больше 12,5%.
+ */
+public interface RouteSearchStatsMXBean {
+
+    /**
+     * Проверяет, включен ли сбор статистики.
+     * @return true если статистика собирается
+     */
+    boolean isEnabled();
+
+    /**
+     * Включает или выключает сбор статистики.
+     * @param enabled true чтобы собирать статистику
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Возвращает количество выполненных поисков.
+     * @return количество выполненных поисков
+     */
+    long getSearchCount();
+
+    /**
+     * Возвращает количество поисков, не нашедших маршрут.
+     * @return количество поисков, не нашедших маршрут
+     */
+    long getNotFoundCount();
+
+    /**
+     * Возвращает суммарное количество городов, извлеченных из очередей.
+     * @return суммарное количество городов, извлеченных из очередей
+     */
+    long getTotalSettled();
+
+    /**
+     * Возвращает суммарное количество просмотренных маршрутов.
+     * @return суммарное количество просмотренных маршрутов
+     */
+    long getTotalRelaxed();
+
+    /**
+     * Возвращает наибольший размер очереди среди всех поисков.
+     * @return наибольший размер очереди среди всех поисков
+     */
+    int getMaxPeakFrontier();
+
+    /**
+     * Возвращает среднее время поиска.
+     * @return среднее время поиска
+     */
+    double getMeanLatencyMillis();
+
+    /**
+     * Возвращает медиана времени поиска.
+     * @return медиана времени поиска
+     */
+    double getLatencyP50Millis();
+
+    /**
+     * Возвращает 90-й процентиль времени поиска.
+     * @return 90-й процентиль времени поиска
+     */
+    double getLatencyP90Millis();
+
+    /**
+     * Возвращает 99-й процентиль времени поиска.
+     * @return 99-й процентиль времени поиска
+     */
+    double getLatencyP99Millis();
+
+    /**
+     * Возвращает 99,9-й процентиль времени поиска.
+     * @return 99,9-й процентиль времени поиска
+     */
+    double getLatencyP999Millis();
+
+    /**
+     * Возвращает наибольшее время поиска.
+     * @return наибольшее время поиска
+     */
+    double getMaxLatencyMillis();
+
+    /**
+     * Возвращает описания самых долгих поисков, от самого долгого.
+     * @return описания самых долгих поисков, от самого долгого
+     */
+    String[] getSlowestSearches();
+
+    /**
+     * Обнуляет статистику.
+     */
+    void reset();
+}
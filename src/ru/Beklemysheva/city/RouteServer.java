@@ -0,0 +1,414 @@
+/* Локальный сервер запросов маршрутов на виртуальных потоках */
+
+package ru.Beklemysheva.city;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Сервер запросов маршрутов на localhost: граф загружается один раз, а несколько процессов
+ * на той же машине обращаются к нему через сокет (клиент — RouteClient).
+ *
+ * Протокол двоичный, каждый кадр — int длины и тело (DataOutputStream, big-endian).
+ * Запрос: byte операции (ROUTE — маршрут, COST — только стоимость), названия городов
+ * начала и конца (writeUTF). Ответ: byte состояния (FOUND, NOT_FOUND или ERROR);
+ * для FOUND — double стоимости, а для ROUTE еще int числа городов и их названия;
+ * для ERROR — текст ошибки.
+ *
+ * Каждое соединение обслуживают два виртуальных потока: читающий принимает запросы,
+ * не дожидаясь ответов на предыдущие (конвейер), и запускает каждый поиск в своем
+ * виртуальном потоке; пишущий отправляет ответы строго в порядке запросов.
+ * Виртуальные потоки не хранят рабочие массивы поиска: снимок и иерархия выдают их
+ * из своего пула (ScratchPool) на время запроса, поэтому массивы размером O(V)
+ * создаются не для каждого запроса, а не более чем для maxInFlight одновременных.
+ * Запрос COST выполняет поиск только стоимости, без восстановления маршрута.
+ * Общее для всех соединений число запросов в работе ограничено семафором: разрешение
+ * берется при чтении запроса и возвращается после отправки ответа, поэтому при перегрузке
+ * сервер перестает читать новые запросы, а не копит их в памяти. Кроме того, у каждого
+ * соединения есть свой предел запросов в работе (по умолчанию четверть общего):
+ * его разрешение берется раньше общего, поэтому один клиент с глубоким конвейером
+ * не занимает все общие разрешения и не останавливает остальных клиентов.
+ *
+ * Исключения при обработке запроса записываются в журнал сервера, а клиент получает
+ * только общий текст ошибки без подробностей реализации.
+ */
+public final class RouteServer implements AutoCloseable {
+    static final byte ROUTE = 1;
+    static final byte COST = 2;
+    static final byte FOUND = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte ERROR = 2;
+    static final int MAX_FRAME = 1 << 20;
+
+    private static final FutureTask<byte[]> END = new FutureTask<>(() -> null);
+
+    private final BiFunction<Integer, Integer, RouteResult> search;
+    private final ToDoubleBiFunction<Integer, Integer> costSearch;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final ServerSocket socket;
+    private final Semaphore inFlight;
+    private final int maxPerConnection;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Создает сервер на открытом сокете.
+     * @param graph снимок графа
+     * @param search поиск маршрута по номерам городов
+     * @param costSearch поиск только стоимости по номерам городов
+     * @param socket сокет, принимающий соединения
+     * @param maxInFlight наибольшее число запросов в работе
+     * @param maxPerConnection наибольшее число запросов в работе от одного соединения
+     */
+    private RouteServer(CityGraph graph, BiFunction<Integer, Integer, RouteResult> search,
+                        ToDoubleBiFunction<Integer, Integer> costSearch,
+                        ServerSocket socket, int maxInFlight, int maxPerConnection) {
+        this.search = search;
+        this.costSearch = costSearch;
+        this.socket = socket;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxPerConnection = maxPerConnection;
+        for (int i = graph.cityCount() - 1; i >= 0; i--) {
+            ids.put(graph.nameAt(i), i);
+        }
+        Thread.ofVirtual().name("route-server-accept").start(this::accept);
+    }
+
+    /**
+     * Запускает сервер поиска по снимку графа (алгоритм Дейкстры).
+     * Одно соединение держит в работе не больше четверти от maxInFlight запросов.
+     * @param graph снимок графа
+     * @param port порт на localhost (0 — любой свободный)
+     * @param maxInFlight наибольшее число запросов в работе по всем соединениям
+     * @return запущенный сервер или null, если сокет не удалось открыть
+     */
+    public static RouteServer start(CityGraph graph, int port, int maxInFlight) {
+        return start(graph, port, maxInFlight, defaultPerConnection(maxInFlight));
+    }
+
+    /**
+     * Запускает сервер поиска по снимку графа (алгоритм Дейкстры).
+     * @param graph снимок графа
+     * @param port порт на localhost (0 — любой свободный)
+     * @param maxInFlight наибольшее число запросов в работе по всем соединениям
+     * @param maxPerConnection наибольшее число запросов в работе от одного соединения
+     * @return запущенный сервер или null, если сокет не удалось открыть
+     */
+    public static RouteServer start(CityGraph graph, int port, int maxInFlight, int maxPerConnection) {
+        if (graph == null) {
+            System.out.println("Ошибка: снимок графа не может быть null.");
+            return null;
+        }
+        return start(graph, graph::shortestPath, graph::shortestCost, port, maxInFlight, maxPerConnection);
+    }
+
+    /**
+     * Запускает сервер поиска по иерархии сжатия.
+     * Одно соединение держит в работе не больше четверти от maxInFlight запросов.
+     * @param hierarchy иерархия сжатия
+     * @param port порт на localhost (0 — любой свободный)
+     * @param maxInFlight наибольшее число запросов в работе по всем соединениям
+     * @return запущенный сервер или null, если сокет не удалось открыть
+     */
+    public static RouteServer start(ContractionHierarchy hierarchy, int port, int maxInFlight) {
+        return start(hierarchy, port, maxInFlight, defaultPerConnection(maxInFlight));
+    }
+
+    /**
+     * Запускает сервер поиска по иерархии сжатия.
+     * @param hierarchy иерархия сжатия
+     * @param port порт на localhost (0 — любой свободный)
+     * @param maxInFlight наибольшее число запросов в работе по всем соединениям
+     * @param maxPerConnection наибольшее число запросов в работе от одного соединения
+     * @return запущенный сервер или null, если сокет не удалось открыть
+     */
+    public static RouteServer start(ContractionHierarchy hierarchy, int port, int maxInFlight,
+                                    int maxPerConnection) {
+        if (hierarchy == null) {
+            System.out.println("Ошибка: иерархия не может быть null.");
+            return null;
+        }
+        return start(hierarchy.getGraph(), hierarchy::shortestPath, hierarchy::shortestCost,
+                port, maxInFlight, maxPerConnection);
+    }
+
+    private static RouteServer start(CityGraph graph, BiFunction<Integer, Integer, RouteResult> search,
+                                     ToDoubleBiFunction<Integer, Integer> costSearch,
+                                     int port, int maxInFlight, int maxPerConnection) {
+        if (maxInFlight < 1) {
+            System.out.println("Ошибка: число запросов в работе должно быть положительным.");
+            maxInFlight = 1;
+        }
+        if (maxPerConnection < 1 || maxPerConnection > maxInFlight) {
+            System.out.println("Ошибка: предел запросов соединения должен быть от 1 до " + maxInFlight + ".");
+            maxPerConnection = defaultPerConnection(maxInFlight);
+        }
+        try {
+            ServerSocket socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+            return new RouteServer(graph, search, costSearch, socket, maxInFlight, maxPerConnection);
+        } catch (IOException e) {
+            System.out.println("Ошибка запуска сервера маршрутов: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Предел запросов одного соединения по умолчанию.
+     * @param maxInFlight общий предел запросов в работе
+     * @return четверть общего предела, но не меньше 1
+     */
+    private static int defaultPerConnection(int maxInFlight) {
+        return Math.max(1, maxInFlight / 4);
+    }
+
+    /**
+     * Возвращает порт, на котором сервер принимает соединения.
+     * @return номер порта
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Останавливает сервер и закрывает все соединения.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Ошибка закрытия сервера маршрутов: " + e.getMessage());
+        }
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Принимает соединения, пока сервер не закрыт.
+     */
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket connection = socket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread.ofVirtual().start(() -> serve(connection));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Ошибка приема соединения: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает запросы соединения и запускает их обработку; ответы отправляет пишущий поток.
+     * @param connection соединение с клиентом
+     */
+    private void serve(Socket connection) {
+        BlockingQueue<FutureTask<byte[]>> pending = new LinkedBlockingQueue<>();
+        Semaphore own = new Semaphore(maxPerConnection);
+        Thread writer = Thread.ofVirtual().start(() -> respond(connection, pending, own));
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_FRAME) {
+                    System.out.println("Ошибка: неверная длина запроса " + length + ".");
+                    break;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                own.acquire();
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    own.release();
+                    throw e;
+                }
+                FutureTask<byte[]> task = new FutureTask<>(() -> handle(frame));
+                pending.add(task);
+                Thread.ofVirtual().start(task);
+            }
+        } catch (IOException e) {
+            if (!closed && !connection.isClosed()) {
+                System.out.println("Ошибка чтения запроса: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.add(END);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.remove(connection);
+        closeQuietly(connection);
+    }
+
+    /**
+     * Отправляет ответы в порядке запросов. Буфер сбрасывается, когда готовых ответов
+     * больше нет, поэтому ответы конвейера уходят пачками. После ошибки записи
+     * оставшиеся запросы дожидаются завершения без отправки, чтобы вернуть разрешения.
+     * @param connection соединение с клиентом
+     * @param pending запросы в порядке поступления
+     * @param own разрешения запросов этого соединения
+     */
+    private void respond(Socket connection, BlockingQueue<FutureTask<byte[]>> pending, Semaphore own) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        } catch (IOException e) {
+            closeQuietly(connection);
+        }
+        while (true) {
+            FutureTask<byte[]> task;
+            try {
+                task = pending.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == END) {
+                return;
+            }
+            byte[] response = result(task);
+            try {
+                if (out != null) {
+                    out.writeInt(response.length);
+                    out.write(response);
+                    if (pending.isEmpty() || !pending.peek().isDone()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                out = null;
+                closeQuietly(connection);
+            } finally {
+                inFlight.release();
+                own.release();
+            }
+        }
+    }
+
+    /**
+     * Дожидается ответа на запрос.
+     * @param task обработка запроса
+     * @return тело ответа
+     */
+    private static byte[] result(FutureTask<byte[]> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            System.out.println("Ошибка обработки запроса: " + e.getCause());
+            return error("внутренняя ошибка сервера");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error("сервер остановлен");
+        }
+    }
+
+    /**
+     * Выполняет один запрос.
+     * @param frame тело запроса
+     * @return тело ответа
+     */
+    private byte[] handle(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte operation;
+        String start;
+        String end;
+        try {
+            operation = in.readByte();
+            start = in.readUTF();
+            end = in.readUTF();
+        } catch (IOException e) {
+            return error("неверный формат запроса");
+        }
+        if (operation != ROUTE && operation != COST) {
+            return error("неизвестная операция " + operation);
+        }
+        Integer from = ids.get(start);
+        Integer to = ids.get(end);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (operation == COST) {
+            double cost = from == null || to == null ? Double.POSITIVE_INFINITY : costSearch.applyAsDouble(from, to);
+            if (cost == Double.POSITIVE_INFINITY) {
+                out.writeByte(NOT_FOUND);
+            } else {
+                out.writeByte(FOUND);
+                out.writeDouble(cost);
+            }
+            return bytes.toByteArray();
+        }
+
+        RouteResult result = from == null || to == null ? RouteResult.NOT_FOUND : search.apply(from, to);
+        if (!result.isFound()) {
+            out.writeByte(NOT_FOUND);
+            return bytes.toByteArray();
+        }
+        out.writeByte(FOUND);
+        out.writeDouble(result.getCost());
+        City[] cities = result.getCities();
+        out.writeInt(cities.length);
+        for (City city : cities) {
+            out.writeUTF(city.getName());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Создает ответ с ошибкой.
+     * @param message текст ошибки
+     * @return тело ответа
+     */
+    private static byte[] error(String message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(ERROR);
+            out.writeUTF(message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void closeQuietly(Socket connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // соединение уже закрыто
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/* Пул рабочих массивов поиска, принадлежащий графу */
+
+package ru.Beklemysheva.city;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Пул рабочих массивов поиска (размером O(V)), общий для всех потоков, выполняющих
+ * запросы к одному графу. Запрос берет массивы на время поиска и возвращает их,
+ * поэтому массивы не привязаны к потоку: запросы из новых виртуальных потоков
+ * или из разных пулов потоков переиспользуют уже созданные экземпляры.
+ *
+ * Экземпляр создается, только если свободных нет, поэтому в пуле остается не больше
+ * экземпляров, чем было одновременных запросов (на сервере — не больше maxInFlight).
+ * Пул принадлежит графу и освобождается вместе с ним, в отличие от ThreadLocal,
+ * значения которого остаются в потоках пула после того, как граф больше не нужен.
+ *
+ * @param <T> тип рабочих массивов
+ */
+final class ScratchPool<T> {
+    private final Supplier<T> factory;
+    private final Queue<T> free = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Создает пустой пул.
+     * @param factory создание новых рабочих массивов
+     */
+    ScratchPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Берет свободные рабочие массивы или создает новые.
+     * @return рабочие массивы, которые нужно вернуть через release
+     */
+    T borrow() {
+        T scratch = free.poll();
+        return scratch != null ? scratch : factory.get();
+    }
+
+    /**
+     * Возвращает рабочие массивы в пул.
+     * @param scratch рабочие массивы, полученные через borrow
+     */
+    void release(T scratch) {
+        free.offer(scratch);
+    }
+}
@@ -0,0 +1,53 @@
+/* Счетчики работы поиска маршрута в текущем потоке */
+
+package ru.Beklemysheva.city;
+
+/**
+ * Счетчики одного поиска маршрута: извлеченные из очереди города, просмотренные маршруты
+ * и наибольший размер очереди. Алгоритмы поиска считают их в локальных переменных
+ * и передают сюда один раз в конце; значения сохраняются, только если поток
+ * выполняет поиск под наблюдением RouteSearchStats, иначе вызов ничего не делает.
+ */
+final class SearchProbe {
+    private static final ThreadLocal<SearchProbe> CURRENT = ThreadLocal.withInitial(SearchProbe::new);
+
+    private boolean armed;
+    long settled;
+    long relaxed;
+    int peakFrontier;
+
+    /**
+     * Включает сбор счетчиков в текущем потоке и обнуляет их.
+     * @return счетчики текущего потока
+     */
+    static SearchProbe arm() {
+        SearchProbe probe = CURRENT.get();
+        probe.armed = true;
+        probe.settled = 0;
+        probe.relaxed = 0;
+        probe.peakFrontier = 0;
+        return probe;
+    }
+
+    /**
+     * Выключает сбор счетчиков в текущем потоке.
+     */
+    void disarm() {
+        armed = false;
+    }
+
+    /**
+     * Добавляет счетчики завершенного поиска, если сбор включен.
+     * @param settled количество городов, извлеченных из очереди
+     * @param relaxed количество просмотренных маршрутов
+     * @param peakFrontier наибольший размер очереди
+     */
+    static void record(long settled, long relaxed, int peakFrontier) {
+        SearchProbe probe = CURRENT.get();
+        if (probe.armed) {
+            probe.settled += settled;
+            probe.relaxed += relaxed;
+            probe.peakFrontier = Math.max(probe.peakFrontier, peakFrontier);
+        }
+    }
+}
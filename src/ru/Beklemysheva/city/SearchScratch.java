@@ -0,0 +1,74 @@
+/* Рабочие массивы поиска маршрута по номерам городов */
+
+package ru.Beklemysheva.city;
+
+import java.util.Arrays;
+
+/**
+ * Переиспользуемые рабочие массивы поиска Дейкстры по графу с номерами городов.
+ * Значения расстояний действительны только для городов, отметка которых совпадает
+ * с номером текущего поиска, поэтому сброс перед новым поиском выполняется за O(1).
+ * Очередь — индексированная куча с уменьшением приоритета на месте.
+ * Экземпляр не потокобезопасен: каждый поток использует свой.
+ */
+final class SearchScratch {
+    private final double[] dist;
+    private final int[] parent;
+    private final int[] stamp;
+    private int epoch;
+
+    final IndexedDaryHeap queue;
+
+    /**
+     * Создает рабочие массивы для графа с указанным числом городов.
+     * @param cityCount количество городов
+     */
+    SearchScratch(int cityCount) {
+        dist = new double[cityCount];
+        parent = new int[cityCount];
+        stamp = new int[cityCount];
+        queue = new IndexedDaryHeap(cityCount);
+    }
+
+    /**
+     * Подготавливает массивы к новому поиску.
+     */
+    void reset() {
+        queue.clear();
+        epoch++;
+        if (epoch == 0) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Возвращает найденную стоимость до города.
+     * @param v номер города
+     * @return стоимость или Double.POSITIVE_INFINITY, если город еще не достигнут
+     */
+    double dist(int v) {
+        return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Возвращает номер предыдущего города на найденном пути.
+     * @param v номер достигнутого города
+     * @return номер предыдущего города (-1 для города начала)
+     */
+    int parent(int v) {
+        return parent[v];
+    }
+
+    /**
+     * Запоминает новую стоимость до города и предыдущий город.
+     * @param v номер города
+     * @param cost стоимость
+     * @param previous номер предыдущего города (-1 для города начала)
+     */
+    void set(int v, double cost, int previous) {
+        stamp[v] = epoch;
+        dist[v] = cost;
+        parent[v] = previous;
+    }
+}
@@ -0,0 +1,298 @@
+/* Дерево кратчайших путей из одного города с поддержкой изменений маршрутов */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Дерево кратчайших путей из города-источника до всех достижимых городов,
+ * которое поддерживается в актуальном состоянии при вызовах addRoute и removeRoute
+ * (по схеме Рамалингама — Репса).
+ * При добавлении маршрута пересчитываются только города, стоимость пути до которых уменьшилась.
+ * При удалении маршрута дерева пересчитывается только поддерево под ним: его города получают
+ * начальные стоимости через входящие маршруты из остальной части дерева, после чего
+ * поиск Дейкстры выполняется только внутри поддерева. Удаление маршрута вне дерева ничего не меняет.
+ *
+ * Методы синхронизированы. Уведомления об изменениях приходят после снятия блокировок
+ * городов, поэтому события из разных потоков могут прийти не в том порядке, в котором
+ * выполнялись изменения (например, добавление маршрута после его же удаления).
+ * Поэтому дерево не доверяет содержимому события: для измененной пары городов оно
+ * заново читает текущие маршруты города отправления и приводит дерево в соответствие
+ * с ними. После того как изменения прекратились и все уведомления обработаны, дерево
+ * совпадает с деревом кратчайших путей текущего графа.
+ * Дерево создается методом of и подписано на изменения маршрутов до вызова close().
+ * Подписка хранит дерево по слабой ссылке (WeakRouteListener): незакрытое дерево,
+ * на которое больше нет ссылок, собирается сборщиком мусора и перестает получать
+ * уведомления, но до сборки продолжает их обрабатывать, поэтому дерево следует закрывать.
+ */
+public final class ShortestPathTree implements AutoCloseable {
+    private final City source;
+    private final Map<City, Node> nodes = new IdentityHashMap<>();
+    private final RouteListener listener = new RouteListener() {
+        @Override
+        public void routeAdded(City from, Route route) {
+            onRouteChanged(from, route.getDestination());
+        }
+
+        @Override
+        public void routeRemoved(City from, Route route) {
+            onRouteChanged(from, route.getDestination());
+        }
+    };
+    private final WeakRouteListener subscription = new WeakRouteListener(listener);
+
+    /**
+     * Создает пустое дерево без подписки на изменения.
+     * @param source город-источник
+     */
+    private ShortestPathTree(City source) {
+        this.source = source;
+    }
+
+    /**
+     * Строит дерево кратчайших путей из города и подписывает его на изменения маршрутов.
+     * Подписка оформляется до построения, а уведомления ждут его завершения на блокировке
+     * дерева, поэтому изменения, сделанные во время построения, не теряются.
+     * @param source город-источник (не должен быть null)
+     * @return дерево кратчайших путей
+     */
+    public static ShortestPathTree of(City source) {
+        if (source == null) {
+            System.out.println("Ошибка: город-источник не может быть null.");
+            source = new City("Город без названия");
+        }
+        ShortestPathTree tree = new ShortestPathTree(source);
+        synchronized (tree) {
+            tree.subscription.subscribe();
+            PriorityQueue<Entry> queue = new PriorityQueue<>();
+            queue.add(new Entry(source, 0.0, null));
+            tree.propagate(queue);
+        }
+        return tree;
+    }
+
+    /**
+     * Возвращает город-источник.
+     * @return город-источник
+     */
+    public City getSource() {
+        return source;
+    }
+
+    /**
+     * Возвращает количество городов, достижимых из источника (включая сам источник).
+     * @return количество городов в дереве
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Проверяет, достижим ли город из источника.
+     * @param city город
+     * @return true если путь существует
+     */
+    public synchronized boolean isReachable(City city) {
+        return nodes.containsKey(city);
+    }
+
+    /**
+     * Возвращает стоимость кратчайшего пути от источника до города.
+     * @param city город
+     * @return стоимость или Double.POSITIVE_INFINITY, если город недостижим
+     */
+    public synchronized double getCost(City city) {
+        Node node = nodes.get(city);
+        return node == null ? Double.POSITIVE_INFINITY : node.cost;
+    }
+
+    /**
+     * Возвращает кратчайший маршрут от источника до города.
+     * @param city город назначения
+     * @return маршрут или RouteResult.NOT_FOUND, если город недостижим
+     */
+    public synchronized RouteResult getResult(City city) {
+        Node node = nodes.get(city);
+        if (node == null) {
+            return RouteResult.NOT_FOUND;
+        }
+        List<City> path = new ArrayList<>();
+        for (City current = city; current != null; current = nodes.get(current).parent) {
+            path.add(current);
+        }
+        Collections.reverse(path);
+        return new RouteResult(path.toArray(new City[0]), node.cost);
+    }
+
+    /**
+     * Отписывает дерево от изменений маршрутов. После этого дерево больше не обновляется.
+     */
+    @Override
+    public void close() {
+        subscription.unsubscribe();
+    }
+
+    /**
+     * Обрабатывает изменение маршрута между двумя городами по текущему состоянию графа.
+     * Если ребро дерева from -> destination удалено или его стоимость не совпадает
+     * с деревом, поддерево под destination строится заново. Если маршрут существует
+     * и сокращает путь до destination, уменьшенные стоимости распространяются дальше.
+     * @param from город отправления
+     * @param destination город назначения
+     */
+    private synchronized void onRouteChanged(City from, City destination) {
+        Route current = null;
+        for (Route route : from.routeArray()) {
+            if (route.getDestination() == destination) {
+                current = route;
+                break;
+            }
+        }
+        Node fromNode = nodes.get(from);
+        Node node = nodes.get(destination);
+        if (node != null && node.parent == from
+                && (current == null || fromNode.cost + current.getCost() != node.cost)) {
+            rebuildSubtree(from, destination);
+            return;
+        }
+        if (current == null || fromNode == null) {
+            return;
+        }
+        double candidate = fromNode.cost + current.getCost();
+        if (node != null && candidate >= node.cost) {
+            return;
+        }
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        queue.add(new Entry(destination, candidate, from));
+        propagate(queue);
+    }
+
+    /**
+     * Удаляет поддерево под городом и строит его заново от границы с остальной частью
+     * дерева: города поддерева получают начальные стоимости через текущие входящие маршруты.
+     * @param parent текущий родитель города в дереве
+     * @param root корень удаляемого поддерева
+     */
+    private void rebuildSubtree(City parent, City root) {
+        removeChild(nodes.get(parent), root);
+
+        List<City> affected = new ArrayList<>();
+        Deque<City> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            City city = pending.pop();
+            affected.add(city);
+            for (City child : nodes.remove(city).children) {
+                pending.push(child);
+            }
+        }
+
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        for (City city : affected) {
+            City.Incoming incoming = city.incomingSnapshot();
+            for (int i = 0; i < incoming.sources.length; i++) {
+                Node source = nodes.get(incoming.sources[i]);
+                if (source != null) {
+                    queue.add(new Entry(city, source.cost + incoming.costs[i], incoming.sources[i]));
+                }
+            }
+        }
+        propagate(queue);
+    }
+
+    /**
+     * Поиск Дейкстры от городов в очереди: каждый извлеченный город с меньшей стоимостью,
+     * чем известная, подвешивается к новому родителю, а его маршруты релаксируются.
+     * @param queue начальные кандидаты
+     */
+    private void propagate(PriorityQueue<Entry> queue) {
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+            Node known = nodes.get(entry.city);
+            if (known != null && entry.cost >= known.cost) {
+                continue;
+            }
+            attach(entry.city, entry.cost, entry.parent);
+            for (Route route : entry.city.routeArray()) {
+                double candidate = entry.cost + route.getCost();
+                Node target = nodes.get(route.getDestination());
+                if (target == null || candidate < target.cost) {
+                    queue.add(new Entry(route.getDestination(), candidate, entry.city));
+                }
+            }
+        }
+    }
+
+    /**
+     * Устанавливает новую стоимость и родителя города в дереве.
+     * @param city город
+     * @param cost стоимость пути от источника
+     * @param parent новый родитель (null для источника)
+     */
+    private void attach(City city, double cost, City parent) {
+        Node node = nodes.get(city);
+        if (node == null) {
+            node = new Node();
+            nodes.put(city, node);
+        } else if (node.parent != null) {
+            removeChild(nodes.get(node.parent), city);
+        }
+        node.cost = cost;
+        node.parent = parent;
+        if (parent != null) {
+            nodes.get(parent).children.add(city);
+        }
+    }
+
+    /**
+     * Удаляет город из списка детей узла (сравнение по ссылке).
+     * @param node узел родителя
+     * @param child город-ребенок
+     */
+    private static void removeChild(Node node, City child) {
+        List<City> children = node.children;
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) == child) {
+                children.set(i, children.get(children.size() - 1));
+                children.remove(children.size() - 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Узел дерева: стоимость пути, родитель и дети.
+     */
+    private static final class Node {
+        double cost;
+        City parent;
+        final List<City> children = new ArrayList<>(2);
+    }
+
+    /**
+     * Элемент очереди с приоритетом: город, стоимость пути до него и предлагаемый родитель.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final City city;
+        final double cost;
+        final City parent;
+
+        Entry(City city, double cost, City parent) {
+            this.city = city;
+            this.cost = cost;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+}
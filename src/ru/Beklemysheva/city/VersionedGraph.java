@@ -0,0 +1,474 @@
+/* Версионированные неизменяемые снимки графа городов (MVCC) */
+
+package ru.Beklemysheva.city;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Граф городов, который публикует неизменяемые версии по мере изменения маршрутов.
+ * Читатель берет текущую версию через current() одним чтением AtomicReference, без блокировок,
+ * и выполняет по ней сколько угодно запросов: последующие addRoute и removeRoute ее не меняют.
+ * Пока на версию есть ссылка, она остается доступной; версии, которые больше никто
+ * не держит, освобождает сборщик мусора.
+ *
+ * Маршруты городов хранятся в постоянном префиксном дереве (по 32 потомка в узле),
+ * индексированном номерами городов. Изменение маршрутов одного города копирует только
+ * путь от корня до его листа — O(log n) узлов, — а остальные узлы новая версия
+ * разделяет с предыдущей.
+ *
+ * Граф создается методом of и подписан на изменения маршрутов до вызова close().
+ * Подписка хранит граф по слабой ссылке (WeakRouteListener): незакрытый граф, на который
+ * и на версии которого больше нет ссылок, собирается сборщиком мусора и перестает получать
+ * уведомления, но до сборки продолжает их обрабатывать, поэтому граф следует закрывать.
+ * Изменения обрабатываются по одному под блокировкой писателя: при каждом уведомлении
+ * маршруты города читаются заново,
+ * поэтому уведомления, пришедшие не по порядку, не нарушают итоговое состояние.
+ * Города, достижимые по новым маршрутам, добавляются в граф; номера городов не меняются,
+ * а города, к которым больше не ведут маршруты, остаются в графе.
+ */
+public final class VersionedGraph implements AutoCloseable {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private final AtomicReference<Version> current = new AtomicReference<>();
+    private final Map<Key, Integer> ids = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final ThreadLocal<SearchScratch> scratch = new ThreadLocal<>();
+    private final RouteListener listener = new RouteListener() {
+        @Override
+        public void routeAdded(City source, Route route) {
+            update(source);
+        }
+
+        @Override
+        public void routeRemoved(City source, Route route) {
+            update(source);
+        }
+    };
+    private final WeakRouteListener subscription = new WeakRouteListener(listener);
+
+    /**
+     * Создает пустой граф без подписки на изменения.
+     */
+    private VersionedGraph() {}
+
+    /**
+     * Строит первую версию по набору городов и всем городам, достижимым из них,
+     * и подписывает граф на изменения маршрутов. Подписка оформляется до построения,
+     * а уведомления ждут его завершения на блокировке писателя, поэтому изменения,
+     * сделанные во время построения, не теряются.
+     * @param cities исходные города
+     * @return граф с первой версией
+     */
+    public static VersionedGraph of(Collection<City> cities) {
+        VersionedGraph graph = new VersionedGraph();
+        synchronized (graph.writeLock) {
+            graph.subscription.subscribe();
+            graph.build(cities);
+        }
+        return graph;
+    }
+
+    /**
+     * Строит первую версию. Вызывается под блокировкой писателя.
+     * @param cities исходные города
+     */
+    private void build(Collection<City> cities) {
+        List<City> order = new ArrayList<>();
+        List<Route[]> routesOf = new ArrayList<>();
+        if (cities == null) {
+            System.out.println("Ошибка: набор городов не может быть null.");
+        } else {
+            for (City city : cities) {
+                if (city != null && ids.putIfAbsent(new Key(city), order.size()) == null) {
+                    order.add(city);
+                }
+            }
+        }
+        discover(order, routesOf, 0);
+        Object[] nodes = new Object[order.size()];
+        int routes = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = node(order.get(i), routesOf.get(i));
+            nodes[i] = node;
+            routes += node.targets.length;
+        }
+        current.set(new Version(this, 0, Trie.of(nodes), routes));
+    }
+
+    /**
+     * Возвращает текущую версию графа. Чтение не блокируется писателями.
+     * @return неизменяемая версия
+     */
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * Отписывает граф от изменений маршрутов. Уже выданные версии остаются доступными.
+     */
+    @Override
+    public void close() {
+        subscription.unsubscribe();
+    }
+
+    /**
+     * Публикует новую версию после изменения маршрутов города.
+     * Изменения городов, не входящих в граф, пропускаются.
+     * @param source город, маршруты которого изменились
+     */
+    private void update(City source) {
+        synchronized (writeLock) {
+            Version version = current.get();
+            Integer id = ids.get(new Key(source));
+            if (id == null || id >= version.cityCount()) {
+                return;
+            }
+            Trie trie = version.nodes;
+            int first = trie.size;
+            Route[] sourceRoutes = source.routeArray();
+            List<City> added = new ArrayList<>();
+            List<Route[]> routesOf = new ArrayList<>();
+            track(sourceRoutes, added, first);
+            discover(added, routesOf, first);
+
+            int routes = version.routeCount;
+            Node node = node(source, sourceRoutes);
+            routes += node.targets.length - ((Node) trie.get(id)).targets.length;
+            trie = trie.set(id, node);
+            for (int i = 0; i < added.size(); i++) {
+                Node created = node(added.get(i), routesOf.get(i));
+                routes += created.targets.length;
+                trie = trie.set(first + i, created);
+            }
+            current.set(new Version(this, version.number + 1, trie, routes));
+        }
+    }
+
+    /**
+     * Обходит в ширину города списка и добавляет в него все достижимые города без номера.
+     * Маршруты каждого города читаются один раз и сохраняются, чтобы узел строился
+     * по тому же снимку, по которому присвоены номера городов назначения.
+     * @param order города без узлов дерева в порядке номеров
+     * @param routesOf прочитанные маршруты городов из order
+     * @param base номер первого города в order
+     */
+    private void discover(List<City> order, List<Route[]> routesOf, int base) {
+        for (int i = routesOf.size(); i < order.size(); i++) {
+            Route[] routes = order.get(i).routeArray();
+            routesOf.add(routes);
+            track(routes, order, base);
+        }
+    }
+
+    /**
+     * Присваивает номера городам назначения маршрутов, у которых их еще нет,
+     * и добавляет такие города в список.
+     * @param routes маршруты
+     * @param order города без узлов дерева в порядке номеров
+     * @param base номер первого города в order
+     */
+    private void track(Route[] routes, List<City> order, int base) {
+        for (Route route : routes) {
+            if (ids.putIfAbsent(new Key(route.getDestination()), base + order.size()) == null) {
+                order.add(route.getDestination());
+            }
+        }
+    }
+
+    /**
+     * Создает неизменяемый узел с маршрутами города.
+     * Номера всех городов назначения уже должны быть присвоены.
+     * @param city город
+     * @param routes снимок маршрутов города
+     * @return узел дерева
+     */
+    private Node node(City city, Route[] routes) {
+        int[] targets = new int[routes.length];
+        double[] costs = new double[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            targets[i] = ids.get(new Key(routes[i].getDestination()));
+            costs[i] = routes[i].getCost();
+        }
+        return new Node(city, targets, costs);
+    }
+
+    /**
+     * Возвращает рабочие массивы поиска текущего потока, достаточные для версии.
+     * @param cityCount количество городов версии
+     * @return рабочие массивы поиска
+     */
+    private SearchScratch scratch(int cityCount) {
+        SearchScratch s = scratch.get();
+        if (s == null || s.queue.capacity() < cityCount) {
+            s = new SearchScratch(Math.max(cityCount, s == null ? 0 : 2 * s.queue.capacity()));
+            scratch.set(s);
+        }
+        return s;
+    }
+
+    /**
+     * Неизменяемая версия графа. Номера городов совпадают во всех версиях одного графа.
+     */
+    public static final class Version {
+        private final VersionedGraph owner;
+        private final long number;
+        private final Trie nodes;
+        private final int routeCount;
+
+        private Version(VersionedGraph owner, long number, Trie nodes, int routeCount) {
+            this.owner = owner;
+            this.number = number;
+            this.nodes = nodes;
+            this.routeCount = routeCount;
+        }
+
+        /**
+         * Возвращает номер версии; каждое изменение маршрутов увеличивает его на единицу.
+         * @return номер версии
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        /**
+         * Возвращает количество городов в версии.
+         * @return количество городов
+         */
+        public int cityCount() {
+            return nodes.size;
+        }
+
+        /**
+         * Возвращает количество маршрутов в версии.
+         * @return количество маршрутов
+         */
+        public int routeCount() {
+            return routeCount;
+        }
+
+        /**
+         * Возвращает номер города.
+         * @param city город
+         * @return номер города или -1, если город не входит в версию
+         */
+        public int idOf(City city) {
+            Integer id = city == null ? null : owner.ids.get(new Key(city));
+            return id == null || id >= nodes.size ? -1 : id;
+        }
+
+        /**
+         * Возвращает город по номеру.
+         * @param id номер города
+         * @return город
+         */
+        public City cityAt(int id) {
+            return node(id).city;
+        }
+
+        /**
+         * Возвращает количество маршрутов из города в этой версии.
+         * @param id номер города
+         * @return количество маршрутов
+         */
+        public int outDegree(int id) {
+            return node(id).targets.length;
+        }
+
+        /**
+         * Возвращает номер города назначения маршрута.
+         * @param id номер города отправления
+         * @param index номер маршрута от 0 до outDegree(id) - 1
+         * @return номер города назначения
+         */
+        public int routeTarget(int id, int index) {
+            return node(id).targets[index];
+        }
+
+        /**
+         * Возвращает стоимость маршрута.
+         * @param id номер города отправления
+         * @param index номер маршрута от 0 до outDegree(id) - 1
+         * @return стоимость маршрута
+         */
+        public double routeCost(int id, int index) {
+            return node(id).costs[index];
+        }
+
+        /**
+         * Находит маршрут минимальной стоимости в этой версии (алгоритм Дейкстры).
+         * @param start город начала
+         * @param end город конца
+         * @return найденный маршрут или RouteResult.NOT_FOUND, если путь не найден
+         *         или один из городов не входит в версию
+         */
+        public RouteResult shortestPath(City start, City end) {
+            int from = idOf(start);
+            int to = idOf(end);
+            if (from < 0 || to < 0) {
+                return RouteResult.NOT_FOUND;
+            }
+            SearchScratch s = owner.scratch(nodes.size);
+            s.reset();
+            s.set(from, 0.0, -1);
+            s.queue.insertOrDecrease(from, 0.0);
+            long settled = 0;
+            long relaxed = 0;
+            int peak = 1;
+
+            while (!s.queue.isEmpty()) {
+                int current = s.queue.poll();
+                double cost = s.dist(current);
+                settled++;
+                if (current == to) {
+                    SearchProbe.record(settled, relaxed, peak);
+                    int length = 0;
+                    for (int v = to; v != -1; v = s.parent(v)) {
+                        length++;
+                    }
+                    City[] path = new City[length];
+                    for (int v = to; v != -1; v = s.parent(v)) {
+                        path[--length] = cityAt(v);
+                    }
+                    return new RouteResult(path, cost);
+                }
+                Node node = node(current);
+                relaxed += node.targets.length;
+                for (int i = 0; i < node.targets.length; i++) {
+                    int neighbor = node.targets[i];
+                    double candidate = cost + node.costs[i];
+                    if (candidate < s.dist(neighbor)) {
+                        s.set(neighbor, candidate, current);
+                        s.queue.insertOrDecrease(neighbor, candidate);
+                    }
+                }
+                peak = Math.max(peak, s.queue.size());
+            }
+            SearchProbe.record(settled, relaxed, peak);
+            return RouteResult.NOT_FOUND;
+        }
+
+        private Node node(int id) {
+            return (Node) nodes.get(id);
+        }
+
+        @Override
+        public String toString() {
+            return "Версия " + number + ": городов " + nodes.size + ", маршрутов " + routeCount;
+        }
+    }
+
+    /**
+     * Неизменяемые маршруты одного города в версии.
+     */
+    private static final class Node {
+        final City city;
+        final int[] targets;
+        final double[] costs;
+
+        Node(City city, int[] targets, double[] costs) {
+            this.city = city;
+            this.targets = targets;
+            this.costs = costs;
+        }
+    }
+
+    /**
+     * Ключ словаря номеров: города сравниваются по ссылке.
+     */
+    private static final class Key {
+        final City city;
+
+        Key(City city) {
+            this.city = city;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).city == city;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(city);
+        }
+    }
+
+    /**
+     * Постоянное префиксное дерево с 32 потомками в узле. Изменение копирует путь
+     * от корня до листа, остальные узлы разделяются с исходным деревом.
+     */
+    private static final class Trie {
+        final Object[] root;
+        final int shift;
+        final int size;
+
+        Trie(Object[] root, int shift, int size) {
+            this.root = root;
+            this.shift = shift;
+            this.size = size;
+        }
+
+        /**
+         * Строит дерево из массива значений целиком, без промежуточных копий.
+         * @param values значения по номерам
+         * @return дерево
+         */
+        static Trie of(Object[] values) {
+            Object[] level = values;
+            int shift = 0;
+            while (level.length > WIDTH) {
+                Object[] parents = new Object[(level.length + MASK) / WIDTH];
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = Arrays.copyOfRange(level, i * WIDTH, (i + 1) * WIDTH);
+                }
+                level = parents;
+                shift += BITS;
+            }
+            return new Trie(Arrays.copyOf(level, WIDTH), shift, values.length);
+        }
+
+        Object get(int index) {
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                node = (Object[]) node[(index >>> level) & MASK];
+            }
+            return node[index & MASK];
+        }
+
+        /**
+         * Возвращает дерево, в котором значение заменено или добавлено в конец.
+         * @param index номер от 0 до size включительно
+         * @param value новое значение
+         * @return новое дерево
+         */
+        Trie set(int index, Object value) {
+            Object[] newRoot = root;
+            int newShift = shift;
+            if (index >= 1 << (shift + BITS)) {
+                newRoot = new Object[WIDTH];
+                newRoot[0] = root;
+                newShift += BITS;
+            }
+            return new Trie(set(newRoot, newShift, index, value), newShift, Math.max(size, index + 1));
+        }
+
+        private static Object[] set(Object[] node, int level, int index, Object value) {
+            Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+            if (level == 0) {
+                copy[index & MASK] = value;
+            } else {
+                int child = (index >>> level) & MASK;
+                copy[child] = set((Object[]) copy[child], level - BITS, index, value);
+            }
+            return copy;
+        }
+    }
+}
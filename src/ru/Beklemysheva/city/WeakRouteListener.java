@@ -0,0 +1,60 @@
+/* Подписка на изменения маршрутов, не удерживающая подписчика */
+
+package ru.Beklemysheva.city;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Слушатель, который регистрируется в City вместо слушателя объекта
+ * и передает ему уведомления, храня его по слабой ссылке.
+ * Список слушателей City статический, поэтому слушатель, зарегистрированный напрямую,
+ * удерживал бы своего владельца (дерево, граф, индекс) до конца работы программы,
+ * если владелец не закрыт. Через эту подписку владелец, на которого больше нет ссылок,
+ * собирается сборщиком мусора, а подписка удаляет себя при следующем уведомлении.
+ * Владелец должен хранить исходного слушателя в своем поле, иначе тот будет собран сразу.
+ */
+final class WeakRouteListener implements RouteListener {
+    private final WeakReference<RouteListener> target;
+
+    /**
+     * Создает подписку, не регистрируя ее.
+     * @param target слушатель владельца
+     */
+    WeakRouteListener(RouteListener target) {
+        this.target = new WeakReference<>(target);
+    }
+
+    /**
+     * Регистрирует подписку в City.
+     */
+    void subscribe() {
+        City.addRouteListener(this);
+    }
+
+    /**
+     * Удаляет подписку из City.
+     */
+    void unsubscribe() {
+        City.removeRouteListener(this);
+    }
+
+    @Override
+    public void routeAdded(City source, Route route) {
+        RouteListener listener = target.get();
+        if (listener == null) {
+            unsubscribe();
+            return;
+        }
+        listener.routeAdded(source, route);
+    }
+
+    @Override
+    public void routeRemoved(City source, Route route) {
+        RouteListener listener = target.get();
+        if (listener == null) {
+            unsubscribe();
+            return;
+        }
+        listener.routeRemoved(source, route);
+    }
+}
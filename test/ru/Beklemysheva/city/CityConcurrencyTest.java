@@ -0,0 +1,179 @@
+/* Нагрузочный тест одновременного поиска маршрутов и изменения графа */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.RepeatedTest;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Потоки чтения ищут маршруты (Path.getRoute, Path.getCost), пока потоки записи
+ * добавляют и удаляют маршруты общего графа. Стоимость маршрута между двумя городами
+ * всегда одна и та же, поэтому любой найденный путь можно проверить: каждое его ребро
+ * когда-то существовало, а стоимость равна сумме стоимостей ребер.
+ * Генераторы случайных чисел потоков имеют фиксированные начальные значения.
+ */
+class CityConcurrencyTest {
+    private static final int CITIES = 60;
+    private static final int READERS = 3;
+    private static final int WRITERS = 2;
+    private static final int QUERIES = 1500;
+    private static final int CHANGES = 20_000;
+
+    @RepeatedTest(3)
+    void readersSeeConsistentRoutesWhileWritersChangeGraph() throws InterruptedException {
+        City[] cities = new City[CITIES];
+        Map<City, Integer> ids = new IdentityHashMap<>();
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = new City("C" + i);
+            ids.put(cities[i], i);
+        }
+        Set<Long> existed = ConcurrentHashMap.newKeySet();
+        Random initial = new Random(1);
+        for (int k = 0; k < CITIES * 3; k++) {
+            int a = initial.nextInt(CITIES);
+            int b = initial.nextInt(CITIES);
+            if (a != b && !cities[a].hasRouteTo(cities[b])) {
+                existed.add(edge(a, b));
+                cities[a].addRoute(cities[b], cost(a, b));
+            }
+        }
+
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long seed = 100 + w;
+            threads.add(new Thread(() -> run(start, failures, () -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < CHANGES; i++) {
+                    int a = random.nextInt(CITIES);
+                    int b = random.nextInt(CITIES);
+                    if (a == b) {
+                        continue;
+                    }
+                    if (random.nextBoolean()) {
+                        existed.add(edge(a, b));
+                        if (!cities[a].hasRouteTo(cities[b])) {
+                            cities[a].addRoute(cities[b], cost(a, b));
+                        }
+                    } else {
+                        cities[a].removeRoute(cities[b]);
+                    }
+                }
+            })));
+        }
+        for (int r = 0; r < READERS; r++) {
+            long seed = 200 + r;
+            threads.add(new Thread(() -> run(start, failures, () -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < QUERIES; i++) {
+                    int a = random.nextInt(CITIES);
+                    int b = random.nextInt(CITIES);
+                    Path path = new Path(cities[a], cities[b]);
+                    path.setAlgorithm(Path.Algorithm.values()[i % Path.Algorithm.values().length]);
+                    RouteResult result = path.getResult();
+                    checkRoute(result.getCities(), result.getCost(), cities[a], cities[b], ids, existed);
+                    checkRoute(path.getRoute(), Double.NaN, cities[a], cities[b], ids, existed);
+                    double cost = path.getCost();
+                    assertTrue(cost >= 0, "стоимость " + cost);
+                }
+            })));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!failures.isEmpty()) {
+            Throwable first = failures.peek();
+            throw new AssertionError("ошибок в потоках: " + failures.size(), first);
+        }
+        checkIncomingMirrorsRoutes(cities);
+    }
+
+    /**
+     * Проверяет, что маршрут — цепочка ребер от начала к концу, каждое из которых
+     * когда-то существовало, и что его стоимость равна сумме стоимостей ребер.
+     * Стоимость Double.NaN не проверяется.
+     */
+    private static void checkRoute(City[] route, double cost, City start, City end,
+                                   Map<City, Integer> ids, Set<Long> existed) {
+        if (route.length == 0) {
+            assertTrue(Double.isNaN(cost) || cost == Double.POSITIVE_INFINITY, "пустой маршрут со стоимостью " + cost);
+            return;
+        }
+        double sum = 0;
+        assertTrue(route[0] == start && route[route.length - 1] == end, "маршрут не соединяет начало и конец");
+        for (int i = 0; i + 1 < route.length; i++) {
+            int a = ids.get(route[i]);
+            int b = ids.get(route[i + 1]);
+            assertTrue(existed.contains(edge(a, b)), "ребра C" + a + " -> C" + b + " никогда не было");
+            sum += cost(a, b);
+        }
+        if (!Double.isNaN(cost)) {
+            assertEquals(sum, cost, 1e-9, "стоимость маршрута");
+        }
+    }
+
+    /**
+     * Проверяет, что индекс входящих маршрутов каждого города совпадает с маршрутами,
+     * которые ведут в него.
+     */
+    private static void checkIncomingMirrorsRoutes(City[] cities) {
+        Map<City, Map<City, Double>> expected = new IdentityHashMap<>();
+        for (City city : cities) {
+            expected.put(city, new IdentityHashMap<>());
+        }
+        for (City city : cities) {
+            for (Route route : city.routeArray()) {
+                expected.get(route.getDestination()).put(city, route.getCost());
+            }
+        }
+        for (City city : cities) {
+            City.Incoming incoming = city.incomingSnapshot();
+            Map<City, Double> actual = new IdentityHashMap<>();
+            for (int i = 0; i < incoming.sources.length; i++) {
+                actual.put(incoming.sources[i], incoming.costs[i]);
+            }
+            Map<City, Double> mirror = expected.get(city);
+            assertEquals(mirror.size(), actual.size(), "число входящих маршрутов " + city.getName());
+            for (Map.Entry<City, Double> entry : mirror.entrySet()) {
+                assertEquals(entry.getValue(), actual.get(entry.getKey()),
+                        "маршрут " + entry.getKey().getName() + " -> " + city.getName());
+            }
+        }
+    }
+
+    private static void run(CountDownLatch start, Queue<Throwable> failures, Runnable body) {
+        try {
+            start.await();
+            body.run();
+        } catch (Throwable e) {
+            failures.add(e);
+        }
+    }
+
+    private static long edge(int a, int b) {
+        return (long) a * CITIES + b;
+    }
+
+    private static double cost(int a, int b) {
+        return 1 + (a * 31 + b) % 7;
+    }
+}
@@ -0,0 +1,99 @@
+/* Сравнение иерархии сжатия с алгоритмом Дейкстры и проверка ее сохранения */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Запросы к иерархии сжатия возвращают ту же стоимость, что и алгоритм Дейкстры
+ * по снимку, а развернутые маршруты идут по исходным маршрутам городов.
+ * Сохраненная иерархия загружается для того же снимка и отвергается для другого
+ * снимка или после повреждения.
+ */
+class ContractionHierarchyTest {
+    private static final int PAIRS = 400;
+
+    @Test
+    void queriesAgreeWithDijkstra() {
+        for (long seed = 21; seed <= 24; seed++) {
+            City[] cities = RandomGraphs.generate(seed, 200, 4);
+            CityGraph graph = CityGraph.of(Arrays.asList(cities));
+            ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+            assertNotNull(hierarchy);
+            assertQueriesAgree(graph, hierarchy, new Random(seed));
+        }
+    }
+
+    @Test
+    void savedHierarchyAnswersTheSameQueries() {
+        City[] cities = RandomGraphs.generate(25, 150, 4);
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        byte[] bytes = save(hierarchy);
+
+        ContractionHierarchy loaded = ContractionHierarchy.readFrom(new ByteArrayInputStream(bytes), graph);
+        assertNotNull(loaded);
+        assertEquals(hierarchy.shortcutCount(), loaded.shortcutCount());
+        assertQueriesAgree(graph, loaded, new Random(25));
+    }
+
+    @Test
+    void damagedOrForeignHierarchyIsRejected() {
+        City[] cities = RandomGraphs.generate(26, 150, 4);
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        assertTrue(hierarchy.shortcutCount() > 0);
+        byte[] bytes = save(hierarchy);
+
+        assertNull(ContractionHierarchy.readFrom(
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 5)), graph));
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        assertNull(ContractionHierarchy.readFrom(new ByteArrayInputStream(magic), graph));
+
+        // Стоимость первого короткого ребра: заголовок, порядок городов, исходные ребра.
+        byte[] cost = bytes.clone();
+        int position = 12 + 4 * graph.cityCount() + 28 * graph.routeCount() + 8;
+        ByteBuffer buffer = ByteBuffer.wrap(cost);
+        buffer.putDouble(position, buffer.getDouble(position) + 1);
+        assertNull(ContractionHierarchy.readFrom(new ByteArrayInputStream(cost), graph));
+
+        CityGraph other = CityGraph.of(Arrays.asList(RandomGraphs.generate(27, 150, 4)));
+        assertNull(ContractionHierarchy.readFrom(new ByteArrayInputStream(bytes), other));
+    }
+
+    private static byte[] save(ContractionHierarchy hierarchy) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(hierarchy.writeTo(out));
+        return out.toByteArray();
+    }
+
+    private static void assertQueriesAgree(CityGraph graph, ContractionHierarchy hierarchy, Random random) {
+        int n = graph.cityCount();
+        for (int q = 0; q < PAIRS; q++) {
+            int from = random.nextInt(n);
+            int to = random.nextInt(n);
+            double expected = graph.shortestCost(from, to);
+            assertEquals(expected, hierarchy.shortestCost(from, to), RandomGraphs.EPS);
+            RouteResult route = hierarchy.shortestPath(graph.cityAt(from), graph.cityAt(to));
+            assertEquals(expected != Double.POSITIVE_INFINITY, route.isFound());
+            if (route.isFound()) {
+                assertEquals(expected, route.getCost(), RandomGraphs.EPS);
+                assertEquals(expected, RandomGraphs.routeCost(route.getCities(), graph.cityAt(from),
+                        graph.cityAt(to)), RandomGraphs.EPS);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* Сравнение таблицы стоимостей с попарным поиском маршрутов */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Таблица стоимостей по снимку и по иерархии сжатия совпадает с попарным поиском
+ * алгоритмом Дейкстры, в том числе для недостижимых пар и городов вне снимка,
+ * а записанный файл содержит ту же таблицу.
+ */
+class CostMatrixTest {
+    @TempDir
+    java.nio.file.Path directory;
+
+    @Test
+    void matrixMatchesPairwiseSearch() {
+        for (long seed = 61; seed <= 63; seed++) {
+            City[] cities = RandomGraphs.generate(seed, 120, 4);
+            CityGraph graph = CityGraph.of(Arrays.asList(cities));
+            ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+            Random random = new Random(seed);
+            List<City> sources = pick(cities, random, 15);
+            List<City> targets = pick(cities, random, 25);
+            // Город вне снимка: его строка и столбец бесконечны.
+            sources.add(new City("CM_outside" + seed));
+            targets.add(new City("CM_outside" + seed));
+
+            assertMatches(graph, sources, targets, CostMatrix.compute(graph, sources, targets));
+            assertMatches(graph, sources, targets, CostMatrix.compute(hierarchy, sources, targets));
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                assertMatches(graph, sources, targets, CostMatrix.compute(graph, sources, targets, pool));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void writtenMatrixMatchesComputed() throws IOException {
+        City[] cities = RandomGraphs.generate(64, 80, 4);
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        Random random = new Random(64);
+        List<City> sources = pick(cities, random, 10);
+        List<City> targets = pick(cities, random, 7);
+        java.nio.file.Path file = directory.resolve("matrix.bin");
+        assertTrue(CostMatrix.write(graph, sources, targets, file));
+
+        double[] expected = CostMatrix.compute(graph, sources, targets);
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(16 + 8L * expected.length, data.capacity());
+        assertEquals(sources.size(), data.getInt(8));
+        assertEquals(targets.size(), data.getInt(12));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], data.getDouble(16 + 8 * i));
+        }
+    }
+
+    @Test
+    void invalidArgumentsGiveEmptyMatrix() {
+        CityGraph graph = CityGraph.of(Arrays.asList(RandomGraphs.generate(65, 10, 2)));
+        assertEquals(0, CostMatrix.compute(graph, null, new ArrayList<>()).length);
+        assertEquals(0, CostMatrix.compute((CityGraph) null, new ArrayList<>(), new ArrayList<>()).length);
+    }
+
+    private static List<City> pick(City[] cities, Random random, int count) {
+        List<City> picked = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            picked.add(cities[random.nextInt(cities.length)]);
+        }
+        return picked;
+    }
+
+    private static void assertMatches(CityGraph graph, List<City> sources, List<City> targets, double[] matrix) {
+        assertEquals(sources.size() * targets.size(), matrix.length);
+        for (int i = 0; i < sources.size(); i++) {
+            for (int j = 0; j < targets.size(); j++) {
+                double expected = graph.shortestCost(sources.get(i), targets.get(j));
+                assertEquals(expected, matrix[i * targets.size() + j], RandomGraphs.EPS,
+                        sources.get(i).getName() + " -> " + targets.get(j).getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* Импорт списка ребер из файлов CSV и TSV */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Корректные строки импортируются, заголовок, комментарии и пустые строки пропускаются,
+ * а некорректные строки пропускаются, не мешая остальным.
+ */
+class EdgeListImporterTest {
+    @TempDir
+    java.nio.file.Path directory;
+
+    @Test
+    void csvWithHeaderAndCommentsIsImported() throws IOException {
+        Map<String, City> cities = EdgeListImporter.importFile(write("roads.csv",
+                "# сеть дорог",
+                "from,to,cost",
+                "",
+                "Москва,Тверь,2.5",
+                " Тверь , Псков , 4 ",
+                "Москва,Псков,7"));
+        assertEquals(Arrays.asList("Москва", "Тверь", "Псков"), List.copyOf(cities.keySet()));
+        assertEquals(2, cities.get("Москва").routeCount());
+        assertRoute(cities, "Москва", "Тверь", 2.5);
+        assertRoute(cities, "Тверь", "Псков", 4);
+        assertRoute(cities, "Москва", "Псков", 7);
+        assertEquals(0, cities.get("Псков").routeCount());
+    }
+
+    @Test
+    void firstNumericLineIsData() throws IOException {
+        Map<String, City> cities = EdgeListImporter.importFile(write("plain.csv", "A,B,1", "B,C,2"));
+        assertRoute(cities, "A", "B", 1);
+        assertRoute(cities, "B", "C", 2);
+    }
+
+    @Test
+    void tsvUsesTabsAndAllowsCommasInNames() throws IOException {
+        Map<String, City> cities = EdgeListImporter.importFile(write("roads.tsv",
+                "откуда\tкуда\tстоимость",
+                "Ростов-на-Дону, вокзал\tТаганрог\t1.5"));
+        assertRoute(cities, "Ростов-на-Дону, вокзал", "Таганрог", 1.5);
+    }
+
+    @Test
+    void invalidLinesAreSkipped() throws IOException {
+        Map<String, City> cities = EdgeListImporter.importFile(write("bad.csv",
+                "A,B,1",
+                "A,B",
+                "A,B,C,1",
+                "A,C,дорого",
+                "A,D,0",
+                "A,E,-3",
+                "A,F,Infinity",
+                "A,G,NaN",
+                ",B,1",
+                "A, ,1",
+                "A,B,5",
+                "B,C,2"));
+        assertEquals(Arrays.asList("A", "B", "C"), List.copyOf(cities.keySet()));
+        assertEquals(1, cities.get("A").routeCount());
+        // Повторный маршрут A -> B не заменяет первый.
+        assertRoute(cities, "A", "B", 1);
+        assertRoute(cities, "B", "C", 2);
+    }
+
+    @Test
+    void missingFileGivesEmptyResult() {
+        assertTrue(EdgeListImporter.importFile(directory.resolve("missing.csv")).isEmpty());
+        assertTrue(EdgeListImporter.importFile(null).isEmpty());
+    }
+
+    private java.nio.file.Path write(String name, String... lines) throws IOException {
+        return Files.write(directory.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static void assertRoute(Map<String, City> cities, String from, String to, double cost) {
+        City source = cities.get(from);
+        City target = cities.get(to);
+        assertFalse(source == null || target == null, from + " -> " + to);
+        for (Route route : source.routeArray()) {
+            if (route.getDestination() == target) {
+                assertEquals(cost, route.getCost());
+                return;
+            }
+        }
+        throw new AssertionError("нет маршрута " + from + " -> " + to);
+    }
+}
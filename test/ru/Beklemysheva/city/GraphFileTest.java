@@ -0,0 +1,88 @@
+/* Сохранение снимка графа в двоичный файл и его загрузка */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Снимок, сохраненный GraphFile.write, загружается GraphFile.read с теми же городами,
+ * маршрутами и стоимостями, а поврежденный файл не загружается.
+ */
+class GraphFileTest {
+    @TempDir
+    java.nio.file.Path directory;
+
+    @Test
+    void writtenGraphIsReadBack() {
+        CityGraph graph = CityGraph.of(Arrays.asList(RandomGraphs.generate(31, 300, 4)));
+        java.nio.file.Path file = directory.resolve("graph.bin");
+        assertTrue(GraphFile.write(graph, file));
+
+        CityGraph loaded = GraphFile.read(file);
+        assertNotNull(loaded);
+        assertEquals(graph.cityCount(), loaded.cityCount());
+        assertEquals(graph.routeCount(), loaded.routeCount());
+        for (int v = 0; v < graph.cityCount(); v++) {
+            assertEquals(graph.nameAt(v), loaded.nameAt(v));
+            assertEquals(graph.firstRoute(v), loaded.firstRoute(v));
+            assertEquals(graph.outDegree(v), loaded.outDegree(v));
+        }
+        for (int e = 0; e < graph.routeCount(); e++) {
+            assertEquals(graph.routeTarget(e), loaded.routeTarget(e));
+            assertEquals(graph.routeCost(e), loaded.routeCost(e));
+        }
+        Random random = new Random(31);
+        for (int q = 0; q < 200; q++) {
+            int from = random.nextInt(graph.cityCount());
+            int to = random.nextInt(graph.cityCount());
+            assertEquals(graph.shortestCost(from, to), loaded.shortestCost(from, to));
+        }
+    }
+
+    @Test
+    void damagedFileIsRejected() throws IOException {
+        CityGraph graph = CityGraph.of(Arrays.asList(RandomGraphs.generate(32, 50, 3)));
+        int n = graph.cityCount();
+        int m = graph.routeCount();
+        java.nio.file.Path file = directory.resolve("graph.bin");
+        assertTrue(GraphFile.write(graph, file));
+        byte[] bytes = Files.readAllBytes(file);
+
+        assertNull(GraphFile.read(write("truncated.bin", Arrays.copyOf(bytes, bytes.length - 1))));
+        assertNull(GraphFile.read(write("short.bin", Arrays.copyOf(bytes, 8))));
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        assertNull(GraphFile.read(write("magic.bin", magic)));
+
+        byte[] cost = bytes.clone();
+        ByteBuffer.wrap(cost).order(ByteOrder.LITTLE_ENDIAN).putDouble(GraphFile.HEADER_SIZE, -1.0);
+        assertNull(GraphFile.read(write("cost.bin", cost)));
+
+        byte[] target = bytes.clone();
+        int targets = GraphFile.HEADER_SIZE + 8 * m + 4 * (n + 1);
+        ByteBuffer.wrap(target).order(ByteOrder.LITTLE_ENDIAN).putInt(targets, n);
+        assertNull(GraphFile.read(write("target.bin", target)));
+
+        byte[] offsets = bytes.clone();
+        ByteBuffer.wrap(offsets).order(ByteOrder.LITTLE_ENDIAN).putInt(GraphFile.HEADER_SIZE + 8 * m, 1);
+        assertNull(GraphFile.read(write("offsets.bin", offsets)));
+    }
+
+    private java.nio.file.Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(directory.resolve(name), bytes);
+    }
+}
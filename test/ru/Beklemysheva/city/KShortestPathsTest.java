@@ -0,0 +1,95 @@
+/* Сравнение алгоритма Йена с перебором всех маршрутов без повторов */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * На небольших случайных графах стоимости маршрутов, найденных алгоритмом Йена,
+ * совпадают с k наименьшими стоимостями среди всех маршрутов без повторяющихся городов,
+ * найденных перебором; маршруты различны, идут по порядку стоимости и не содержат циклов.
+ */
+class KShortestPathsTest {
+    private static final int K = 12;
+
+    @Test
+    void routesMatchExhaustiveEnumeration() {
+        int compared = 0;
+        for (long seed = 51; seed <= 58; seed++) {
+            City[] cities = RandomGraphs.generate(seed, 9, 4);
+            CityGraph graph = CityGraph.of(Arrays.asList(cities));
+            Random random = new Random(seed);
+            for (int q = 0; q < 10; q++) {
+                City start = cities[random.nextInt(cities.length)];
+                City end = cities[random.nextInt(cities.length)];
+                if (start == end) {
+                    continue;
+                }
+                List<Double> all = new ArrayList<>();
+                enumerate(start, end, new HashSet<>(Collections.singleton(start)), 0.0, all);
+                Collections.sort(all);
+
+                List<RouteResult> routes = KShortestPaths.find(graph, start, end, K);
+                assertEquals(Math.min(K, all.size()), routes.size(), start.getName() + " -> " + end.getName());
+                Set<List<City>> distinct = new HashSet<>();
+                for (int i = 0; i < routes.size(); i++) {
+                    City[] path = routes.get(i).getCities();
+                    RandomGraphs.assertLoopless(path);
+                    assertEquals(routes.get(i).getCost(), RandomGraphs.routeCost(path, start, end), RandomGraphs.EPS);
+                    assertEquals(all.get(i), routes.get(i).getCost(), RandomGraphs.EPS);
+                    if (i > 0) {
+                        assertTrue(routes.get(i - 1).getCost() <= routes.get(i).getCost());
+                    }
+                    assertTrue(distinct.add(Arrays.asList(path)), "маршрут повторяется");
+                }
+                compared += routes.size() > 1 ? 1 : 0;
+            }
+        }
+        assertTrue(compared > 20, "слишком мало пар с несколькими маршрутами: " + compared);
+    }
+
+    @Test
+    void pathDelegatesToYen() {
+        City[] cities = RandomGraphs.generate(59, 30, 4);
+        Random random = new Random(59);
+        for (int q = 0; q < 20; q++) {
+            City start = cities[random.nextInt(cities.length)];
+            City end = cities[random.nextInt(cities.length)];
+            List<RouteResult> routes = new Path(start, end).getRoutes(3);
+            RouteResult best = RouteSearch.dijkstra(start, end);
+            if (start == end) {
+                assertEquals(1, routes.size());
+            } else if (!best.isFound()) {
+                assertTrue(routes.isEmpty());
+            } else {
+                assertEquals(best.getCost(), routes.get(0).getCost(), RandomGraphs.EPS);
+            }
+        }
+    }
+
+    /**
+     * Перебирает все маршруты без повторяющихся городов из current в end.
+     */
+    private static void enumerate(City current, City end, Set<City> visited, double cost, List<Double> costs) {
+        for (Route route : current.routeArray()) {
+            City next = route.getDestination();
+            if (next == end) {
+                costs.add(cost + route.getCost());
+            } else if (visited.add(next)) {
+                enumerate(next, end, visited, cost + route.getCost(), costs);
+                visited.remove(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/* Граф вне кучи: копия снимка и отображение файла графа */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OffHeapGraph, скопированный из снимка или отображенный из файла GraphFile,
+ * находит маршруты той же стоимости, что и снимок CityGraph, а поврежденный файл
+ * не отображается.
+ */
+class OffHeapGraphTest {
+    @TempDir
+    java.nio.file.Path directory;
+
+    @Test
+    void copiedAndMappedGraphsAgreeWithSnapshot() {
+        City[] cities = RandomGraphs.generate(41, 250, 4);
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        java.nio.file.Path file = directory.resolve("graph.bin");
+        assertTrue(GraphFile.write(graph, file));
+
+        try (OffHeapGraph copied = OffHeapGraph.of(graph); OffHeapGraph mapped = OffHeapGraph.map(file)) {
+            assertNotNull(copied);
+            assertNotNull(mapped);
+            for (OffHeapGraph offHeap : new OffHeapGraph[]{copied, mapped}) {
+                assertEquals(graph.cityCount(), offHeap.cityCount());
+                assertEquals(graph.routeCount(), offHeap.routeCount());
+                for (int v = 0; v < graph.cityCount(); v++) {
+                    assertEquals(v, offHeap.idOf(graph.nameAt(v)));
+                }
+                assertRoutesAgree(graph, offHeap, new Random(41));
+            }
+        }
+    }
+
+    @Test
+    void closedGraphCannotBeQueried() {
+        CityGraph graph = CityGraph.of(Arrays.asList(RandomGraphs.generate(42, 20, 3)));
+        OffHeapGraph offHeap = OffHeapGraph.of(graph);
+        offHeap.close();
+        assertThrows(IllegalStateException.class, () -> offHeap.routeCost(0));
+    }
+
+    @Test
+    void damagedFileIsNotMapped() throws IOException {
+        CityGraph graph = CityGraph.of(Arrays.asList(RandomGraphs.generate(43, 50, 3)));
+        int n = graph.cityCount();
+        int m = graph.routeCount();
+        java.nio.file.Path file = directory.resolve("graph.bin");
+        assertTrue(GraphFile.write(graph, file));
+        byte[] bytes = Files.readAllBytes(file);
+
+        assertNull(OffHeapGraph.map(write("truncated.bin", Arrays.copyOf(bytes, bytes.length - 1))));
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        assertNull(OffHeapGraph.map(write("magic.bin", magic)));
+
+        byte[] cost = bytes.clone();
+        ByteBuffer.wrap(cost).order(ByteOrder.LITTLE_ENDIAN).putDouble(GraphFile.HEADER_SIZE, Double.NaN);
+        assertNull(OffHeapGraph.map(write("cost.bin", cost)));
+
+        byte[] target = bytes.clone();
+        int targets = GraphFile.HEADER_SIZE + 8 * m + 4 * (n + 1);
+        ByteBuffer.wrap(target).order(ByteOrder.LITTLE_ENDIAN).putInt(targets, -1);
+        assertNull(OffHeapGraph.map(write("target.bin", target)));
+
+        byte[] names = bytes.clone();
+        int nameOffsets = targets + 4 * m;
+        ByteBuffer.wrap(names).order(ByteOrder.LITTLE_ENDIAN).putInt(nameOffsets + 4 * n, Integer.MAX_VALUE);
+        assertNull(OffHeapGraph.map(write("names.bin", names)));
+    }
+
+    private static void assertRoutesAgree(CityGraph graph, OffHeapGraph offHeap, Random random) {
+        for (int q = 0; q < 200; q++) {
+            int from = random.nextInt(graph.cityCount());
+            int to = random.nextInt(graph.cityCount());
+            double expected = graph.shortestCost(from, to);
+            RouteResult route = offHeap.shortestPath(from, to);
+            assertEquals(expected != Double.POSITIVE_INFINITY, route.isFound());
+            if (route.isFound()) {
+                assertEquals(expected, route.getCost(), RandomGraphs.EPS);
+                // Города маршрута создаются заново: сопоставляем их с исходными по названию.
+                City[] found = route.getCities();
+                City[] original = new City[found.length];
+                for (int i = 0; i < found.length; i++) {
+                    original[i] = graph.cityAt(offHeap.idOf(found[i].getName()));
+                }
+                assertEquals(expected, RandomGraphs.routeCost(original, graph.cityAt(from), graph.cityAt(to)),
+                        RandomGraphs.EPS);
+            }
+        }
+    }
+
+    private java.nio.file.Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(directory.resolve(name), bytes);
+    }
+}
@@ -0,0 +1,124 @@
+/* Обход, запись и стоимость маршрута Path */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * iterator, stream, writeTo, toString и getRoute выдают один и тот же маршрут,
+ * а getCost совпадает со стоимостью getResult и алгоритмом Дейкстры до и после
+ * изменения графа, в каком бы порядке ни вызывались методы.
+ */
+class PathTest {
+    @Test
+    void viewsOfTheRouteAgree() {
+        City[] cities = RandomGraphs.generate(71, 100, 3);
+        CityGraph graph = CityGraph.of(Arrays.asList(cities));
+        Random random = new Random(71);
+        for (int q = 0; q < 150; q++) {
+            Path path = new Path(cities[random.nextInt(cities.length)], cities[random.nextInt(cities.length)]);
+            if (q % 3 == 1) {
+                path.setGraph(graph);
+            } else if (q % 3 == 2) {
+                path.setAlgorithm(Path.Algorithm.BIDIRECTIONAL);
+            }
+            City[] route = path.getRoute();
+            List<City> iterated = new ArrayList<>();
+            path.iterator().forEachRemaining(iterated::add);
+            assertEquals(Arrays.asList(route), iterated);
+            assertEquals(iterated, path.stream().collect(Collectors.toList()));
+
+            StringWriter written = new StringWriter();
+            assertTrue(path.writeTo(written));
+            assertEquals(path.toString(), written.toString());
+            String expected = route.length == 0 ? "Путь не найден"
+                    : Arrays.stream(route).map(City::getName).collect(Collectors.joining(" -> "));
+            assertEquals(expected, path.toString());
+        }
+    }
+
+    @Test
+    void costMatchesResultInAnyOrder() {
+        City[] cities = RandomGraphs.generate(72, 100, 3);
+        Random random = new Random(72);
+        for (int q = 0; q < 150; q++) {
+            City start = cities[random.nextInt(cities.length)];
+            City end = cities[random.nextInt(cities.length)];
+            double expected = RouteSearch.dijkstra(start, end).getCost();
+            Path costFirst = new Path(start, end);
+            assertEquals(expected, costFirst.getCost(), RandomGraphs.EPS);
+            assertEquals(expected, costFirst.getResult().getCost(), RandomGraphs.EPS);
+            Path resultFirst = new Path(start, end);
+            resultFirst.setAlgorithm(Path.Algorithm.values()[q % 3]);
+            assertEquals(expected, resultFirst.getResult().getCost(), RandomGraphs.EPS);
+            assertEquals(expected, resultFirst.getCost(), RandomGraphs.EPS);
+        }
+    }
+
+    @Test
+    void cachedCostFollowsGraphChanges() {
+        City a = new City("PT_A");
+        City b = new City("PT_B");
+        City c = new City("PT_C");
+        a.addRoute(b, 2);
+        b.addRoute(c, 2);
+        Path path = new Path(a, c);
+        assertEquals(4, path.getCost());
+        a.addRoute(c, 1);
+        assertEquals(1, path.getCost());
+        assertArrayEquals(new City[]{a, c}, path.getRoute());
+        a.removeRoute(c);
+        a.removeRoute(b);
+        assertEquals(Double.POSITIVE_INFINITY, path.getCost());
+        assertFalse(path.iterator().hasNext());
+        assertEquals("Путь не найден", path.toString());
+        assertEquals(0, new Path(a, a).getCost());
+        assertEquals("PT_A", new Path(a, a).toString());
+    }
+
+    @Test
+    void iteratorAndWriterReportEnd() {
+        City a = new City("PT_D");
+        City b = new City("PT_E");
+        a.addRoute(b, 1);
+        Iterator<City> iterator = new Path(a, b).iterator();
+        assertEquals(a, iterator.next());
+        assertEquals(b, iterator.next());
+        assertThrows(NoSuchElementException.class, iterator::next);
+
+        Appendable failing = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                throw new IOException("запись невозможна");
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                throw new IOException("запись невозможна");
+            }
+
+            @Override
+            public Appendable append(char ch) throws IOException {
+                throw new IOException("запись невозможна");
+            }
+        };
+        assertFalse(new Path(a, b).writeTo(failing));
+        assertFalse(new Path(a, b).writeTo(null));
+    }
+}
@@ -0,0 +1,89 @@
+/* Случайные графы городов с фиксированным начальным значением для тестов */
+
+package ru.Beklemysheva.city;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Генерирует города со случайными координатами и маршрутами. Стоимость маршрута
+ * не меньше евклидова расстояния между его городами, поэтому множитель эвристики 1
+ * допустим для A*. Названия городов включают начальное значение, чтобы графы разных
+ * тестов не пересекались.
+ */
+final class RandomGraphs {
+    /** Допустимая погрешность при сравнении стоимостей, сложенных в разном порядке. */
+    static final double EPS = 1e-9;
+
+    private RandomGraphs() {}
+
+    /**
+     * Создает n городов, из каждого — от 0 до maxDegree маршрутов в случайные города.
+     * @param seed начальное значение генератора
+     * @param n количество городов
+     * @param maxDegree наибольшее количество маршрутов из города
+     * @return города в порядке создания
+     */
+    static City[] generate(long seed, int n, int maxDegree) {
+        Random random = new Random(seed);
+        City[] cities = new City[n];
+        for (int i = 0; i < n; i++) {
+            cities[i] = new City("R" + seed + "_" + i, random.nextDouble() * 100, random.nextDouble() * 100);
+        }
+        for (City city : cities) {
+            int degree = random.nextInt(maxDegree + 1);
+            for (int k = 0; k < degree; k++) {
+                City target = cities[random.nextInt(n)];
+                if (target != city && !city.hasRouteTo(target)) {
+                    city.addRoute(target, city.distanceTo(target) * (1 + random.nextDouble()) + 0.5);
+                }
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Проверяет, что маршрут идет по существующим маршрутам городов из start в end,
+     * и возвращает сумму их стоимостей.
+     * @param cities города маршрута
+     * @param start ожидаемый город начала
+     * @param end ожидаемый город конца
+     * @return стоимость маршрута
+     */
+    static double routeCost(City[] cities, City start, City end) {
+        assertTrue(cities.length > 0, "маршрут пуст");
+        assertEquals(start, cities[0]);
+        assertEquals(end, cities[cities.length - 1]);
+        double cost = 0;
+        for (int i = 0; i + 1 < cities.length; i++) {
+            cost += costOf(cities[i], cities[i + 1]);
+        }
+        return cost;
+    }
+
+    /**
+     * Проверяет, что в маршруте нет повторяющихся городов.
+     * @param cities города маршрута
+     */
+    static void assertLoopless(City[] cities) {
+        List<City> list = Arrays.asList(cities);
+        for (int i = 0; i < cities.length; i++) {
+            assertEquals(i, list.indexOf(cities[i]), "город повторяется: " + cities[i].getName());
+        }
+    }
+
+    private static double costOf(City from, City to) {
+        for (Route route : from.routeArray()) {
+            if (route.getDestination() == to) {
+                return route.getCost();
+            }
+        }
+        fail("нет маршрута " + from.getName() + " -> " + to.getName());
+        return Double.NaN;
+    }
+}
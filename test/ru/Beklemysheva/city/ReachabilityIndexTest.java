@@ -0,0 +1,138 @@
+/* Тест обновления индекса достижимости при изменении маршрутов */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Добавленные маршруты учитываются без перестройки снимка, удаления и новые города
+ * приводят к фоновой перестройке, а до ее завершения ответы остаются верными.
+ */
+class ReachabilityIndexTest {
+
+    /**
+     * Строит две цепочки A0 -> A1 -> ... и B0 -> B1 -> ... без связи между ними.
+     */
+    private static List<City> chains(City[] a, City[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] = new City("A" + i);
+            b[i] = new City("B" + i);
+        }
+        for (int i = 0; i + 1 < a.length; i++) {
+            a[i].addRoute(a[i + 1], 1);
+            b[i].addRoute(b[i + 1], 1);
+        }
+        List<City> roots = new ArrayList<>();
+        roots.add(a[0]);
+        roots.add(b[0]);
+        return roots;
+    }
+
+    @Test
+    void insertionIsVisibleWithoutRebuild() {
+        City[] a = new City[5];
+        City[] b = new City[5];
+        try (ReachabilityIndex index = ReachabilityIndex.of(chains(a, b))) {
+            int components = index.componentCount();
+            assertFalse(index.mayReach(a[1], b[4]));
+            assertFalse(index.isReachable(a[1], b[4]));
+
+            // Маршрут, уже следующий из снимка, ничего не меняет.
+            a[0].addRoute(a[3], 5);
+            // Новая связь между цепочками учитывается сразу.
+            a[2].addRoute(b[1], 1);
+            assertTrue(index.mayReach(a[1], b[4]));
+            assertTrue(index.isReachable(a[1], b[4]));
+            assertFalse(index.isReachable(b[4], a[1]));
+            assertFalse(index.mayReach(a[3], b[0]));
+            // Снимок не перестраивался: добавление между известными городами его не требует.
+            assertEquals(components, index.componentCount());
+
+            // Цикл через добавленный маршрут.
+            b[1].addRoute(a[2], 1);
+            assertTrue(index.isStronglyConnected(a[2], b[1]));
+            assertFalse(index.isStronglyConnected(a[0], b[1]));
+        }
+    }
+
+    @Test
+    void removalIsExactBeforeRebuild() throws InterruptedException {
+        City[] a = new City[5];
+        City[] b = new City[5];
+        try (ReachabilityIndex index = ReachabilityIndex.of(chains(a, b))) {
+            assertTrue(index.isReachable(a[0], a[4]));
+            assertEquals(10, index.componentCount());
+            a[1].removeRoute(a[2]);
+            assertFalse(index.isReachable(a[0], a[4]));
+            assertTrue(index.isReachable(a[0], a[1]));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (index.componentCount() == 10 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // A2..A4 больше не достижимы из исходных городов и не входят в новый снимок.
+            assertEquals(7, index.componentCount());
+            assertFalse(index.isReachable(a[0], a[4]));
+            assertTrue(index.isReachable(a[2], a[4]));
+        }
+    }
+
+    @Test
+    void routeToNewCityKeepsOtherPairsPruned() throws InterruptedException {
+        City[] a = new City[5];
+        City[] b = new City[5];
+        try (ReachabilityIndex index = ReachabilityIndex.of(chains(a, b))) {
+            City x = new City("X");
+            City y = new City("Y");
+            // Маршрут между городами вне индекса не влияет на города индекса.
+            x.addRoute(y, 1);
+            x.removeRoute(y);
+            assertFalse(index.mayReach(b[0], a[0]));
+
+            a[2].addRoute(x, 1);
+            x.addRoute(b[3], 1);
+            // Из B путь к выходу A2 -> X невозможен, отсечение продолжает работать.
+            assertFalse(index.mayReach(b[1], a[0]));
+            assertFalse(index.isReachable(b[1], a[0]));
+            // Из A путь через X возможен и находится обходом текущих маршрутов.
+            assertTrue(index.mayReach(a[0], b[4]));
+            assertTrue(index.isReachable(a[0], b[4]));
+            assertFalse(index.isReachable(a[3], b[4]));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (index.componentCount() == 10 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // X входит в новый снимок.
+            assertEquals(11, index.componentCount());
+            assertTrue(index.isReachable(a[0], b[4]));
+            assertFalse(index.mayReach(b[1], a[0]));
+        }
+    }
+
+    @Test
+    void unknownCitiesAreSearched() {
+        City[] a = new City[3];
+        City[] b = new City[3];
+        try (ReachabilityIndex index = ReachabilityIndex.of(chains(a, b))) {
+            City x = new City("X");
+            City y = new City("Y");
+            x.addRoute(y, 1);
+            assertTrue(index.mayReach(x, y));
+            assertTrue(index.isReachable(x, y));
+            assertFalse(index.isReachable(y, x));
+
+            y.addRoute(a[0], 1);
+            assertTrue(index.isReachable(x, a[2]));
+            assertTrue(index.isReachable(a[0], a[0]));
+        }
+    }
+}
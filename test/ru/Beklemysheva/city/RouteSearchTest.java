@@ -0,0 +1,94 @@
+/* Сравнение алгоритмов поиска маршрута с алгоритмом Дейкстры */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * На случайных графах A*, двунаправленный поиск, поиск только стоимости и поиск
+ * по снимку CityGraph находят маршруты той же стоимости, что и алгоритм Дейкстры,
+ * а найденные маршруты идут по существующим маршрутам городов.
+ */
+class RouteSearchTest {
+    private static final int PAIRS = 300;
+
+    @Test
+    void enginesAgreeWithDijkstra() {
+        for (long seed = 1; seed <= 5; seed++) {
+            City[] cities = RandomGraphs.generate(seed, 150, 4);
+            CityGraph graph = CityGraph.of(Arrays.asList(cities));
+            Random random = new Random(seed * 31);
+            for (int q = 0; q < PAIRS; q++) {
+                City start = cities[random.nextInt(cities.length)];
+                City end = cities[random.nextInt(cities.length)];
+                RouteResult expected = RouteSearch.dijkstra(start, end);
+                double cost = expected.getCost();
+                if (expected.isFound()) {
+                    assertEquals(cost, RandomGraphs.routeCost(expected.getCities(), start, end), RandomGraphs.EPS);
+                }
+                assertSame(cost, RouteSearch.aStar(start, end, 1.0), start, end);
+                assertSame(cost, RouteSearch.bidirectional(start, end), start, end);
+                assertSame(cost, graph.shortestPath(start, end), start, end);
+                assertEquals(cost, RouteSearch.cost(start, end, 0.0), RandomGraphs.EPS);
+                assertEquals(cost, RouteSearch.cost(start, end, 1.0), RandomGraphs.EPS);
+                assertEquals(cost, graph.shortestCost(start, end), RandomGraphs.EPS);
+            }
+        }
+    }
+
+    @Test
+    void pathReturnsTheShortestRouteForEveryAlgorithm() {
+        City[] cities = RandomGraphs.generate(11, 80, 3);
+        Random random = new Random(11);
+        for (int q = 0; q < 100; q++) {
+            City start = cities[random.nextInt(cities.length)];
+            City end = cities[random.nextInt(cities.length)];
+            double expected = RouteSearch.dijkstra(start, end).getCost();
+            for (Path.Algorithm algorithm : Path.Algorithm.values()) {
+                Path path = new Path(start, end);
+                path.setAlgorithm(algorithm);
+                assertSame(expected, path.getResult(), start, end);
+                assertEquals(expected, path.getCost(), RandomGraphs.EPS);
+            }
+            Path explicit = new Path(start, end);
+            explicit.setAlgorithm(Path.Algorithm.A_STAR);
+            explicit.setHeuristicScale(1.0);
+            assertSame(expected, explicit.getResult(), start, end);
+        }
+    }
+
+    @Test
+    void unreachableCityIsNotFound() {
+        City a = new City("RS_A");
+        City b = new City("RS_B");
+        City c = new City("RS_C");
+        a.addRoute(b, 1);
+        c.addRoute(a, 1);
+        assertFalse(RouteSearch.dijkstra(a, c).isFound());
+        assertFalse(RouteSearch.bidirectional(a, c).isFound());
+        assertEquals(Double.POSITIVE_INFINITY, RouteSearch.cost(a, c, 0.0));
+        assertFalse(CityGraph.of(Collections.singletonList(c)).shortestPath(a, c).isFound());
+        assertTrue(RouteSearch.bidirectional(c, b).isFound());
+    }
+
+    /**
+     * Проверяет, что маршрут найден тогда же, когда и алгоритмом Дейкстры,
+     * идет по существующим маршрутам и имеет ту же стоимость.
+     */
+    private static void assertSame(double expected, RouteResult actual, City start, City end) {
+        assertEquals(expected != Double.POSITIVE_INFINITY, actual.isFound(),
+                start.getName() + " -> " + end.getName());
+        if (actual.isFound()) {
+            assertEquals(expected, actual.getCost(), RandomGraphs.EPS);
+            assertEquals(expected, RandomGraphs.routeCost(actual.getCities(), start, end), RandomGraphs.EPS);
+        }
+    }
+}
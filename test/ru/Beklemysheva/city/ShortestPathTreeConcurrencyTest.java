@@ -0,0 +1,150 @@
+/* Тест дерева кратчайших путей при одновременных изменениях маршрутов */
+
+package ru.Beklemysheva.city;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Несколько потоков добавляют и удаляют одни и те же маршруты, поэтому уведомления
+ * о них приходят дереву в произвольном порядке. После завершения потоков дерево
+ * должно совпадать с результатом нового поиска Дейкстры из источника,
+ * а его маршруты должны состоять из существующих ребер. Отдельный тест воспроизводит
+ * перестановку событий детерминированно: уведомление о добавлении маршрута задерживается,
+ * пока другой поток не удалит этот маршрут.
+ */
+class ShortestPathTreeConcurrencyTest {
+    private static final int CITIES = 40;
+    private static final int WRITERS = 4;
+    private static final int CHANGES = 20_000;
+
+    @RepeatedTest(3)
+    void treeMatchesFreshSearchAfterConcurrentChanges() throws InterruptedException {
+        City[] cities = new City[CITIES];
+        for (int i = 0; i < CITIES; i++) {
+            cities[i] = new City("C" + i);
+        }
+        Random initial = new Random(3);
+        for (int k = 0; k < CITIES * 3; k++) {
+            int a = initial.nextInt(CITIES);
+            int b = initial.nextInt(CITIES);
+            if (a != b && !cities[a].hasRouteTo(cities[b])) {
+                cities[a].addRoute(cities[b], 1 + initial.nextInt(9));
+            }
+        }
+
+        try (ShortestPathTree tree = ShortestPathTree.of(cities[0])) {
+            Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                long seed = 300 + w;
+                threads.add(new Thread(() -> {
+                    try {
+                        start.await();
+                        Random random = new Random(seed);
+                        for (int i = 0; i < CHANGES; i++) {
+                            // Небольшое множество пар, чтобы потоки часто меняли одни и те же маршруты.
+                            int a = random.nextInt(CITIES / 4);
+                            int b = random.nextInt(CITIES);
+                            if (a == b) {
+                                continue;
+                            }
+                            if (random.nextBoolean()) {
+                                if (!cities[a].hasRouteTo(cities[b])) {
+                                    cities[a].addRoute(cities[b], 1 + random.nextInt(9));
+                                }
+                            } else {
+                                cities[a].removeRoute(cities[b]);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(failures.isEmpty(), "ошибки в потоках: " + failures);
+
+            for (City city : cities) {
+                double expected = RouteSearch.cost(cities[0], city, 0.0);
+                assertEquals(expected, tree.getCost(city), 1e-9, "стоимость до " + city.getName());
+                RouteResult result = tree.getResult(city);
+                City[] route = result.getCities();
+                double sum = 0;
+                for (int i = 0; i + 1 < route.length; i++) {
+                    Route edge = null;
+                    for (Route r : route[i].routeArray()) {
+                        if (r.getDestination() == route[i + 1]) {
+                            edge = r;
+                        }
+                    }
+                    assertTrue(edge != null, "в дереве удаленное ребро " + route[i].getName()
+                            + " -> " + route[i + 1].getName());
+                    sum += edge.getCost();
+                }
+                if (route.length > 0) {
+                    assertEquals(result.getCost(), sum, 1e-9, "стоимость маршрута до " + city.getName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void addEventDeliveredAfterRemovalDoesNotRestoreDeletedRoute() throws InterruptedException {
+        City source = new City("S");
+        City target = new City("T");
+        CountDownLatch removed = new CountDownLatch(1);
+        Thread[] adder = new Thread[1];
+        RouteListener gate = new RouteListener() {
+            @Override
+            public void routeAdded(City from, Route route) {
+                if (Thread.currentThread() == adder[0]) {
+                    try {
+                        removed.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void routeRemoved(City from, Route route) {
+            }
+        };
+        // Слушатель-задержка зарегистрирован раньше дерева и вызывается первым.
+        City.addRouteListener(gate);
+        try (ShortestPathTree tree = ShortestPathTree.of(source)) {
+            adder[0] = new Thread(() -> source.addRoute(target, 5.0));
+            adder[0].start();
+            while (!source.hasRouteTo(target)) {
+                Thread.onSpinWait();
+            }
+            source.removeRoute(target);
+            removed.countDown();
+            adder[0].join();
+
+            assertEquals(Double.POSITIVE_INFINITY, tree.getCost(target));
+            assertTrue(!tree.isReachable(target));
+        } finally {
+            City.removeRouteListener(gate);
+        }
+    }
+}